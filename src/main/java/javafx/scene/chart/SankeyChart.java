@@ -2,6 +2,8 @@ package javafx.scene.chart;
 
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
+import javafx.collections.WeakSetChangeListener;
+import javafx.scene.text.Font;
 
 import java.util.*;
 import java.util.stream.IntStream;
@@ -9,9 +11,11 @@ import java.util.stream.IntStream;
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.max;
 import static java.util.Comparator.comparingDouble;
+import static java.util.Comparator.comparingInt;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
-import static javafx.collections.FXCollections.emptyObservableSet;
+import static javafx.collections.FXCollections.observableSet;
 
 /**
  * @author Adrian Healey <adrian.j.healey@gmail.com>
@@ -23,43 +27,172 @@ public class SankeyChart extends Chart {
 
     private double valueToHeightRatio = 0.0;
 
+    private int maxOrderingSweeps = 8;
+    private long orderingTimeBudget = 10;
+
+    private boolean batchedLinks = false;
+    private final SankeyLinkBatches linkBatches = new SankeyLinkBatches(getChartChildren());
+
+    private final SankeyLinkFilter linkFilter = new SankeyLinkFilter();
+    // set when nodes or links are added or removed
+    private boolean topologyChanged = true;
+    // set when all the links must be laid out again, not only the ones
+    // touched by the filter
+    private boolean linksLayoutNeeded = true;
+
+    private boolean nodeLabelsVisible = true;
+    private final SankeyNodeLabels nodeLabels = new SankeyNodeLabels();
+
     private ObservableSet<SankeyNode> nodes;
     private ObservableSet<SankeyLink> links;
     private Set<SankeyNode> newNodes = new HashSet<>();
 
     public SankeyChart() {
-        this(emptyObservableSet(), emptyObservableSet());
+        this(observableSet(), observableSet());
     }
 
+    /**
+     * Create a chart displaying the given sets. The chart follows the
+     * changes of the sets through weak listeners, but each node and
+     * link references the chart displaying it, so the chart stays
+     * reachable from any set that is not empty. Call {@link #dispose()}
+     * to release the chart when the sets outlive it.
+     *
+     * @param nodes nodes of the chart
+     * @param links links of the chart
+     */
     public SankeyChart(ObservableSet<SankeyNode> nodes,
                        ObservableSet<SankeyLink> links) {
         this.nodes = nodes;
-        this.nodes.addListener(nodesChangeListener);
+        this.nodes.addListener(weakNodesChangeListener);
         this.newNodes.addAll(nodes);
         this.nodes.stream()
                 .forEach(node -> node.setChart(this));
 
         this.links = links;
-        this.links.addListener(linksChangeListener);
+        this.links.addListener(weakLinksChangeListener);
         this.links.stream()
                 .forEach(link -> link.setChart(this));
 
         getChartChildren().addAll(links);
         getChartChildren().addAll(nodes);
+        // the labels are drawn above everything else
+        getChartChildren().add(nodeLabels.getGroup());
+    }
+
+    public void addNode(SankeyNode node) {
+        checkArgument(node != null, "node cannot be null");
+        nodes.add(node);
+    }
+
+    public void removeNode(SankeyNode node) {
+        nodes.remove(node);
+    }
+
+    public void addLink(SankeyLink link) {
+        checkArgument(link != null, "link cannot be null");
+        links.add(link);
+    }
+
+    public void removeLink(SankeyLink link) {
+        links.remove(link);
+    }
+
+    /**
+     * Detach the chart from its nodes, links and their sets.
+     * The chart must not be used afterwards.
+     */
+    public void dispose() {
+        nodes.removeListener(weakNodesChangeListener);
+        links.removeListener(weakLinksChangeListener);
+        nodes.stream()
+                .forEach(this::detach);
+        links.stream()
+                .forEach(this::detach);
+        linkBatches.clear();
+        nodeLabels.clear();
     }
 
     @Override
     protected void layoutChartChildren(double top, double left, double width, double height) {
         computeNodesValue();
-        computeNodesHorizontalPosition();
-        computeNodesVerticalPosition();
+        boolean fullLayout = topologyChanged || linksLayoutNeeded || !newNodes.isEmpty();
+        if (topologyChanged) {
+            computeNodesHorizontalPosition();
+            linkFilter.updateColumns(nodes);
+        }
+        // the vertical positions are only used to place new nodes
+        if (topologyChanged || !newNodes.isEmpty()) {
+            computeNodesVerticalPosition();
+        }
+        topologyChanged = false;
+        double previousValueToHeightRatio = valueToHeightRatio;
         computeValueToHeightRatio(height);
-        computeCoordinatesForNewNodes(top, left, width, height);
-        // Links layout
-        computeLinksStartCoordinates();
-        computeLinksEndCoordinates();
-        computeLinksControlsPoints();
-        computeLinksStroke();
+        if (fullLayout || valueToHeightRatio != previousValueToHeightRatio) {
+            computeCoordinatesForNewNodes(top, left, width, height);
+            // Links layout
+            computeLinksStartCoordinates();
+            computeLinksEndCoordinates();
+            computeLinksControlsPoints();
+            computeLinksStroke();
+            updateDrawnLinks(links);
+        } else {
+            // only the filter changed the values of some nodes
+            layoutLinksOfChangedNodes();
+        }
+        linkFilter.clearChangedNodes();
+        linksLayoutNeeded = false;
+        if (nodeLabelsVisible) {
+            nodeLabels.update(nodes, left + width);
+        }
+    }
+
+    /**
+     * Resize the nodes whose value has been changed by the filter and
+     * lay out their links only. The other nodes and links keep their
+     * place, the positions and the order of the nodes are left as is.
+     */
+    private void layoutLinksOfChangedNodes() {
+        Set<SankeyLink> changedLinks = new HashSet<>();
+        for (SankeyNode node : linkFilter.getChangedNodes()) {
+            node.setHeight(node.getValue() * valueToHeightRatio);
+            computeCoordinatesForLinksOutgoingFrom(node, linkFilter.linksFrom(node));
+            computeCoordinatesForLinksIncomingTo(node, linkFilter.linksTo(node));
+            changedLinks.addAll(linkFilter.linksFrom(node));
+            changedLinks.addAll(linkFilter.linksTo(node));
+        }
+        changedLinks.stream()
+                .forEach(link -> {
+                    computeControlPointsFor(link);
+                    link.setStrokeWidth(link.getValue() * valueToHeightRatio);
+                });
+        updateDrawnLinks(changedLinks);
+    }
+
+    /**
+     * Draw the given links in their batch, or add them to the scene
+     * graph, unless they are filtered out.
+     *
+     * @param updatedLinks links whose layout changed
+     */
+    private void updateDrawnLinks(Collection<SankeyLink> updatedLinks) {
+        if (batchedLinks) {
+            updatedLinks.stream()
+                    .forEach(linkBatches::update);
+            linkBatches.flush();
+            return;
+        }
+        Set<SankeyLink> filteredLinks = updatedLinks.stream()
+                .filter(link -> link.isFiltered() && link.getParent() != null)
+                .collect(toSet());
+        List<SankeyLink> shownLinks = updatedLinks.stream()
+                .filter(link -> !link.isFiltered() && link.getParent() == null)
+                .collect(toList());
+        if (!filteredLinks.isEmpty()) {
+            getChartChildren().removeAll(filteredLinks);
+        }
+        // links are drawn below the nodes
+        getChartChildren().addAll(0, shownLinks);
     }
 
     private void computeLinksStroke() {
@@ -99,8 +232,13 @@ public class SankeyChart extends Chart {
     }
 
     private void computeCoordinatesForLinksOutgoingFrom(SankeyNode node) {
-        List<SankeyLink> outgoingLinks = links.stream()
+        computeCoordinatesForLinksOutgoingFrom(node, links);
+    }
+
+    private void computeCoordinatesForLinksOutgoingFrom(SankeyNode node, Collection<SankeyLink> candidates) {
+        List<SankeyLink> outgoingLinks = candidates.stream()
                 .filter(link -> link.getSource().equals(node))
+                .filter(link -> !link.isFiltered())
                 .sorted(comparingDouble(link -> link.getTarget().getY()))
                 .collect(toList());
 
@@ -121,8 +259,13 @@ public class SankeyChart extends Chart {
     }
 
     private void computeCoordinatesForLinksIncomingTo(SankeyNode node) {
-        List<SankeyLink> incomingNodes = links.stream()
+        computeCoordinatesForLinksIncomingTo(node, links);
+    }
+
+    private void computeCoordinatesForLinksIncomingTo(SankeyNode node, Collection<SankeyLink> candidates) {
+        List<SankeyLink> incomingNodes = candidates.stream()
                 .filter(link -> link.getTarget().equals(node))
+                .filter(link -> !link.isFiltered())
                 .sorted(comparingDouble(link -> link.getSource().getY()))
                 .collect(toList());
 
@@ -184,7 +327,7 @@ public class SankeyChart extends Chart {
     private void computeYCoordinateForNodesInColumn(int column, double top) {
         List<SankeyNode> nodesInColumn = nodes.stream()
                 .filter(node -> node.getHorizontalPosition() == column)
-                .sorted((o1, o2) -> o1.getValue().compareTo(o2.getValue()))
+                .sorted(comparingInt(SankeyNode::getVerticalPosition))
                 .collect(toList());
 
         double currentY = top;
@@ -218,57 +361,202 @@ public class SankeyChart extends Chart {
      * @param height height of the frame
      */
     private void computeValueToHeightRatio(double height) {
-        OptionalDouble totalValueOfTheBiggestColumn = nodes.stream()
-                .mapToInt(SankeyNode::getHorizontalPosition)
-                .distinct()
-                .mapToDouble(this::computeTotalValueForColumn)
-                .max();
+        double totalValueOfTheBiggestColumn = linkFilter.maxColumnTotal();
 
-        this.valueToHeightRatio = totalValueOfTheBiggestColumn.isPresent()  ?
-                height/totalValueOfTheBiggestColumn.getAsDouble() :
+        this.valueToHeightRatio = totalValueOfTheBiggestColumn > 0 ?
+                height/totalValueOfTheBiggestColumn :
                 0.0;
     }
 
-    /**
-     * Compute the total value of a node column
-     *
-     * @param column column to sum
-     * @return the total of the given column
-     */
-    private double computeTotalValueForColumn(int column) {
-        return nodes.stream()
-                .filter(nodes -> nodes.getHorizontalPosition() == column)
-                .mapToDouble(SankeyNode::getValue)
-                .sum();
-    }
-
     /**
      * Compute the vertical position of each node.
      * Each nodes will receive an unique index per column.
      * For any column, each contained node will receive an index
      * between 0 and n-1 where n is the number of nodes in that
      * column.
+     *
+     * The nodes are first ordered by value, then reordered to limit
+     * the crossings between links within the limits given by
+     * {@link #setMaxOrderingSweeps(int)} and
+     * {@link #setOrderingTimeBudget(long)}.
      */
     void computeNodesVerticalPosition() {
-        nodes.stream()
-                .mapToInt(SankeyNode::getHorizontalPosition)
-                .distinct()
-                .forEach(this::computeVerticalPositionForNodesInColumn);
+        List<SankeyNode> indexedNodes = new ArrayList<>(nodes);
+        Map<SankeyNode, Integer> indexes = new HashMap<>();
+        int[] columns = new int[indexedNodes.size()];
+        int numberOfColumns = 0;
+        for (int i = 0; i < indexedNodes.size(); i++) {
+            indexes.put(indexedNodes.get(i), i);
+            columns[i] = indexedNodes.get(i).getHorizontalPosition();
+            numberOfColumns = max(numberOfColumns, columns[i] + 1);
+        }
+
+        int[][] layers = new int[numberOfColumns][];
+        for (int column = 0; column < numberOfColumns; column++) {
+            layers[column] = nodesInColumnOrderedByValue(column).stream()
+                    .mapToInt(indexes::get)
+                    .toArray();
+        }
+
+        List<SankeyLink> forwardLinks = links.stream()
+                .filter(link -> indexes.containsKey(link.getSource()) && indexes.containsKey(link.getTarget()))
+                .filter(link -> link.getSource().getHorizontalPosition() < link.getTarget().getHorizontalPosition())
+                .filter(link -> !link.isFiltered())
+                .collect(toList());
+        int[] linkSources = forwardLinks.stream().mapToInt(link -> indexes.get(link.getSource())).toArray();
+        int[] linkTargets = forwardLinks.stream().mapToInt(link -> indexes.get(link.getTarget())).toArray();
+        double[] linkValues = forwardLinks.stream().mapToDouble(SankeyLink::getValue).toArray();
+
+        int[][] orderedLayers = new SankeyNodeOrdering(columns, linkSources, linkTargets, linkValues, layers)
+                .order(maxOrderingSweeps, MILLISECONDS.toNanos(orderingTimeBudget));
+        for (int[] layer : orderedLayers) {
+            IntStream.range(0, layer.length)
+                    .forEach(i -> indexedNodes.get(layer[i]).setVerticalPosition(i));
+        }
     }
 
     /**
-     * Give a unique index between 0 and n with n the number of nodes
-     * in the given column for each nodes.
+     * List the nodes of the given column ordered by value.
      *
      * @param column column to sort
+     * @return the nodes of the column, the smallest first
      */
-    private void computeVerticalPositionForNodesInColumn(int column) {
-        List<SankeyNode> orderedNodes = nodes.stream()
+    private List<SankeyNode> nodesInColumnOrderedByValue(int column) {
+        return nodes.stream()
                 .filter(node -> node.getHorizontalPosition() == column)
                 .sorted((o1, o2) -> o1.getValue().compareTo(o2.getValue()))
                 .collect(toList());
-        IntStream.range(0, orderedNodes.size())
-                .forEach(i -> orderedNodes.get(i).setVerticalPosition(i));
+    }
+
+    public int getMaxOrderingSweeps() {
+        return maxOrderingSweeps;
+    }
+
+    /**
+     * Set the maximum number of sweeps used to limit the crossings
+     * between links. 0 keeps the nodes ordered by value.
+     *
+     * @param maxOrderingSweeps maximum number of sweeps
+     */
+    public void setMaxOrderingSweeps(int maxOrderingSweeps) {
+        checkArgument(maxOrderingSweeps >= 0, "maxOrderingSweeps cannot be negative");
+        this.maxOrderingSweeps = maxOrderingSweeps;
+        requestChartLayout();
+    }
+
+    public long getOrderingTimeBudget() {
+        return orderingTimeBudget;
+    }
+
+    /**
+     * Set the time, in milliseconds, allowed to limit the crossings
+     * between links. The nodes are only reordered when nodes or links
+     * are added or removed. When the budget runs out, the best ordering
+     * found so far is used, by default the nodes ordered by value.
+     *
+     * @param orderingTimeBudget time budget in milliseconds
+     */
+    public void setOrderingTimeBudget(long orderingTimeBudget) {
+        checkArgument(orderingTimeBudget >= 0, "orderingTimeBudget cannot be negative");
+        this.orderingTimeBudget = orderingTimeBudget;
+        requestChartLayout();
+    }
+
+    public boolean isBatchedLinks() {
+        return batchedLinks;
+    }
+
+    /**
+     * Choose how the links are drawn. When batched, links sharing the
+     * same color, opacity and width bucket are drawn together by a
+     * single path instead of one curve per link, which keeps the scene
+     * graph small for charts with many links. The links themselves are
+     * then not part of the scene graph and do not receive mouse events.
+     * Changing the stroke or the opacity of a link, for instance with
+     * {@link SankeyLink#setDarkerColor()}, moves it at once to the batch
+     * of its new style without laying out the chart again.
+     *
+     * @param batchedLinks true to draw the links by batches
+     */
+    public void setBatchedLinks(boolean batchedLinks) {
+        if (this.batchedLinks == batchedLinks) {
+            return;
+        }
+        this.batchedLinks = batchedLinks;
+        if (batchedLinks) {
+            getChartChildren().removeAll(links);
+        } else {
+            linkBatches.clear();
+            getChartChildren().addAll(0, links.stream()
+                    .filter(link -> !link.isFiltered())
+                    .collect(toList()));
+        }
+        linksLayoutNeeded = true;
+        requestChartLayout();
+    }
+
+    public double getMinimumLinkValue() {
+        return linkFilter.getThreshold();
+    }
+
+    /**
+     * Hide the links whose value is below the given one. Only the links
+     * crossing the threshold are visited and the values of the nodes
+     * are updated incrementally; unless the scale of the chart changes,
+     * the next layout only moves the links of these nodes, so the
+     * threshold can follow a slider. The hidden links are removed from
+     * the scene graph, their {@code visible} property is left untouched.
+     *
+     * @param minimumLinkValue minimum value of a displayed link, not NaN
+     */
+    public void setMinimumLinkValue(double minimumLinkValue) {
+        checkArgument(!Double.isNaN(minimumLinkValue), "minimumLinkValue cannot be NaN");
+        linkFilter.setThreshold(minimumLinkValue);
+        requestChartLayout();
+    }
+
+    public boolean isNodeLabelsVisible() {
+        return nodeLabelsVisible;
+    }
+
+    /**
+     * Show or hide the names of the nodes, displayed by default. A name
+     * overlapping the name of a bigger node is not displayed.
+     *
+     * @param nodeLabelsVisible true to display the names of the nodes
+     */
+    public void setNodeLabelsVisible(boolean nodeLabelsVisible) {
+        this.nodeLabelsVisible = nodeLabelsVisible;
+        if (!nodeLabelsVisible) {
+            nodeLabels.clear();
+        }
+        requestChartLayout();
+    }
+
+    public Font getNodeLabelsFont() {
+        return nodeLabels.getFont();
+    }
+
+    public void setNodeLabelsFont(Font font) {
+        nodeLabels.setFont(font);
+        requestChartLayout();
+    }
+
+    public double getLinkWidthBucket() {
+        return linkBatches.getWidthBucket();
+    }
+
+    /**
+     * Set the width, in pixels, of the buckets used to group links
+     * when they are batched. The width of a batched link is rounded to
+     * a multiple of this value.
+     *
+     * @param linkWidthBucket width of a bucket
+     */
+    public void setLinkWidthBucket(double linkWidthBucket) {
+        linkBatches.setWidthBucket(linkWidthBucket);
+        linksLayoutNeeded = true;
+        requestChartLayout();
     }
 
 
@@ -297,29 +585,18 @@ public class SankeyChart extends Chart {
 
     /**
      * Compute the value of each node.
-     */
-    void computeNodesValue() {
-        nodes.stream()
-                .forEach(this::updateValueFor);
-    }
-
-    /**
-     * Compute the value of the given node by taking the maximum
-     * between the total value of incoming links and the total
-     * value of outgoing links.
      *
-     * @param node node of which the value will be computed
+     * The values are maintained by the link filter, they are only
+     * computed again when links or nodes have been added or removed or
+     * when the value of a link has changed.
      */
-    void updateValueFor(SankeyNode node) {
-        checkArgument(node != null, "node cannot be null");
-
-        node.setValue(
-                max(sumOfLinksFrom(node), sumOfLinksTargeting(node)));
+    void computeNodesValue() {
+        linkFilter.refresh(nodes, links);
     }
 
     /**
-     * Compute the sum of the values of the links targeting the given
-     * node.
+     * Compute the sum of the values of the shown links targeting the
+     * given node.
      *
      * @param node targeted node.
      * @return the sum of the value of the links targeting the node
@@ -327,13 +604,14 @@ public class SankeyChart extends Chart {
     double sumOfLinksTargeting(SankeyNode node) {
         return links.stream()
                 .filter(link -> link.getTarget().equals(node))
+                .filter(link -> !link.isFiltered())
                 .mapToDouble(SankeyLink::getValue)
                 .sum();
     }
 
     /**
-     * Compute the sum of the values of the links coming from the given
-     * node.
+     * Compute the sum of the values of the shown links coming from the
+     * given node.
      *
      * @param node targeted node.
      * @return the sum of the value of the links coming from the node
@@ -341,6 +619,7 @@ public class SankeyChart extends Chart {
     double sumOfLinksFrom(SankeyNode node) {
         return links.stream()
                 .filter(link -> link.getSource().equals(node))
+                .filter(link -> !link.isFiltered())
                 .mapToDouble(SankeyLink::getValue)
                 .sum();
     }
@@ -363,25 +642,90 @@ public class SankeyChart extends Chart {
     private SetChangeListener<SankeyNode> nodesChangeListener = new SetChangeListener<SankeyNode>() {
         @Override
         public void onChanged(Change<? extends SankeyNode> change) {
-
+            if (change.wasRemoved()) {
+                detach(change.getElementRemoved());
+            }
+            if (change.wasAdded()) {
+                attach(change.getElementAdded());
+            }
+            requestChartLayout();
         }
     };
 
     private SetChangeListener<SankeyLink> linksChangeListener = new SetChangeListener<SankeyLink>() {
         @Override
         public void onChanged(Change<? extends SankeyLink> change) {
-
+            if (change.wasRemoved()) {
+                detach(change.getElementRemoved());
+            }
+            if (change.wasAdded()) {
+                attach(change.getElementAdded());
+            }
+            requestChartLayout();
         }
     };
 
+    private WeakSetChangeListener<SankeyNode> weakNodesChangeListener =
+            new WeakSetChangeListener<>(nodesChangeListener);
+
+    private WeakSetChangeListener<SankeyLink> weakLinksChangeListener =
+            new WeakSetChangeListener<>(linksChangeListener);
+
+    private void attach(SankeyNode node) {
+        node.setChart(this);
+        linkFilter.invalidate();
+        topologyChanged = true;
+        newNodes.add(node);
+        // below the group of the labels, which is the last child
+        getChartChildren().add(getChartChildren().size() - 1, node);
+    }
+
+    private void detach(SankeyNode node) {
+        node.setChart(null);
+        linkFilter.invalidate();
+        topologyChanged = true;
+        newNodes.remove(node);
+        getChartChildren().remove(node);
+        nodeLabels.remove(node);
+    }
+
+    private void attach(SankeyLink link) {
+        link.setChart(this);
+        linkFilter.invalidate();
+        topologyChanged = true;
+        if (!batchedLinks) {
+            // links are drawn below the nodes
+            getChartChildren().add(0, link);
+        }
+    }
+
+    private void detach(SankeyLink link) {
+        link.setChart(null);
+        linkFilter.invalidate();
+        topologyChanged = true;
+        getChartChildren().remove(link);
+        linkBatches.remove(link);
+    }
+
     public void valueHasChangedFor(SankeyLink sankeyLink) {
+        linkFilter.valueHasChangedFor(sankeyLink);
         requestChartLayout();
     }
 
+    public void styleHasChangedFor(SankeyLink sankeyLink) {
+        if (batchedLinks) {
+            // only the batches the link leaves and joins are rebuilt
+            linkBatches.update(sankeyLink);
+            linkBatches.flush();
+        }
+    }
+
     public void nameHasChangedFor(SankeyNode sankeyNode) {
+        requestChartLayout();
     }
 
     public void positionHasChangedFor(SankeyNode sankeyNode) {
+        linksLayoutNeeded = true;
         requestChartLayout();
     }
 }
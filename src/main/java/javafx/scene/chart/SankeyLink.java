@@ -1,7 +1,11 @@
 package javafx.scene.chart;
 
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.scene.shape.CubicCurve;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -17,18 +21,54 @@ public class SankeyLink extends CubicCurve {
 
     private DoubleProperty value;
 
+    /**
+     * True when the value of the link is below the minimum link value
+     * of its chart, the link is then neither drawn nor counted in the
+     * value of its nodes.
+     */
+    private boolean filtered = false;
+
+    /**
+     * Notify the chart of value changes. The value property may be
+     * shared with a long-lived model, so it is only listened to while
+     * the link belongs to a chart, and weakly.
+     */
+    private ChangeListener<Number> valueChangeListener = (observable, oldValue, newValue) -> {
+        SankeyChart chart = getChart();
+        if (chart != null) {
+            chart.valueHasChangedFor(this);
+        }
+    };
+
+    private WeakChangeListener<Number> weakValueChangeListener = new WeakChangeListener<>(valueChangeListener);
+
+    /**
+     * Notify the chart of style changes, such as the ones made by
+     * {@link #setDarkerColor()}, which batched charts have to redraw.
+     */
+    private InvalidationListener styleListener = observable -> {
+        SankeyChart chart = getChart();
+        if (chart != null) {
+            chart.styleHasChangedFor(this);
+        }
+    };
+
+    public SankeyLink(SankeyNode source, SankeyNode target, double value) {
+        this(source, target, new SimpleDoubleProperty(value));
+    }
+
     public SankeyLink(SankeyNode source, SankeyNode target, DoubleProperty value) {
         checkArgument(source != null, "source cannot be null");
         checkArgument(target != null, "target cannot be null");
+        checkArgument(value != null, "value cannot be null");
 
         this.source = source;
         this.target = target;
         this.value = value;
-        this.value.addListener((observable, oldValue, newValue) -> {
-            SankeyLink.this.getChart().valueHasChangedFor(SankeyLink.this);
-        });
 
         setColor();
+        strokeProperty().addListener(styleListener);
+        opacityProperty().addListener(styleListener);
     }
 
     public double getValue() {
@@ -43,6 +83,14 @@ public class SankeyLink extends CubicCurve {
         return value;
     }
 
+    boolean isFiltered() {
+        return filtered;
+    }
+
+    void setFiltered(boolean filtered) {
+        this.filtered = filtered;
+    }
+
     public SankeyNode getSource() {
         return source;
     }
@@ -74,7 +122,17 @@ public class SankeyLink extends CubicCurve {
      */
     private ReadOnlyObjectWrapper<SankeyChart> chart = new ReadOnlyObjectWrapper<>();
 
+    /**
+     * Attach the link to the given chart, or detach it when
+     * {@code chart} is null.
+     *
+     * @param chart the chart displaying this link
+     */
     public void setChart(SankeyChart chart) {
+        value.removeListener(weakValueChangeListener);
+        if (chart != null) {
+            value.addListener(weakValueChangeListener);
+        }
         this.chart.setValue(chart);
     }
 
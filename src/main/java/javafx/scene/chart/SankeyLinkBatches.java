@@ -0,0 +1,241 @@
+package javafx.scene.chart;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.CubicCurveTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static javafx.scene.shape.StrokeLineCap.BUTT;
+
+/**
+ * Draw links sharing the same style with a single {@link Path}.
+ *
+ * Links are grouped by stroke, opacity and stroke width rounded to a
+ * multiple of the width bucket. Each group is drawn by one path made of
+ * a {@link MoveTo} and a {@link CubicCurveTo} per link, and a path is
+ * only rebuilt when one of its links has moved, changed style, joined
+ * or left the group.
+ */
+final class SankeyLinkBatches {
+
+    private final ObservableList<Node> children;
+
+    private double widthBucket = 1.0;
+
+    private final Map<BatchKey, Batch> batches = new HashMap<>();
+    private final Map<SankeyLink, LinkState> states = new HashMap<>();
+
+    /**
+     * @param children the list in which the paths are added, below
+     *                 any existing node
+     */
+    SankeyLinkBatches(ObservableList<Node> children) {
+        this.children = children;
+    }
+
+    double getWidthBucket() {
+        return widthBucket;
+    }
+
+    /**
+     * Change the width bucket. All the batches are dropped and will be
+     * rebuilt by the next updates.
+     *
+     * @param widthBucket the width, in pixels, of a bucket
+     */
+    void setWidthBucket(double widthBucket) {
+        checkArgument(widthBucket > 0, "widthBucket must be positive");
+        this.widthBucket = widthBucket;
+        clear();
+    }
+
+    /**
+     * Take into account the current geometry and style of the link, and
+     * whether it is filtered. The paths are only updated by
+     * {@link #flush()}.
+     *
+     * @param link the link to draw
+     */
+    void update(SankeyLink link) {
+        if (link.isFiltered() || !(link.getStrokeWidth() > 0)) {
+            remove(link);
+            return;
+        }
+
+        BatchKey key = new BatchKey(link.getStroke(), link.getOpacity(),
+                Math.max(1, Math.round(link.getStrokeWidth() / widthBucket)));
+        LinkState state = states.get(link);
+        if (state == null) {
+            state = new LinkState(key);
+            states.put(link, state);
+            batchFor(key).add(link);
+        } else if (!state.key.equals(key)) {
+            batches.get(state.key).remove(link);
+            state.key = key;
+            batchFor(key).add(link);
+        } else if (state.hasMoved(link)) {
+            batches.get(key).dirty = true;
+        }
+        state.copyGeometry(link);
+    }
+
+    /**
+     * Stop drawing the given link.
+     *
+     * @param link the link to remove
+     */
+    void remove(SankeyLink link) {
+        LinkState state = states.remove(link);
+        if (state != null) {
+            batches.get(state.key).remove(link);
+        }
+    }
+
+    /**
+     * Rebuild the paths of the batches that have changed since the
+     * last flush and remove the empty ones.
+     */
+    void flush() {
+        Iterator<Batch> iterator = batches.values().iterator();
+        while (iterator.hasNext()) {
+            Batch batch = iterator.next();
+            if (batch.links.isEmpty()) {
+                children.remove(batch.path);
+                iterator.remove();
+            } else if (batch.dirty) {
+                batch.rebuild();
+            }
+        }
+    }
+
+    /**
+     * Remove all the paths.
+     */
+    void clear() {
+        batches.values().stream()
+                .forEach(batch -> children.remove(batch.path));
+        batches.clear();
+        states.clear();
+    }
+
+    int numberOfBatches() {
+        return batches.size();
+    }
+
+    Path pathFor(SankeyLink link) {
+        LinkState state = states.get(link);
+        return state != null ? batches.get(state.key).path : null;
+    }
+
+    private Batch batchFor(BatchKey key) {
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(key);
+            batches.put(key, batch);
+            children.add(0, batch.path);
+        }
+        return batch;
+    }
+
+    private final class Batch {
+        private final Path path = new Path();
+        private final Set<SankeyLink> links = new LinkedHashSet<>();
+        private boolean dirty;
+
+        private Batch(BatchKey key) {
+            path.setStroke(key.stroke);
+            path.setOpacity(key.opacity);
+            path.setStrokeWidth(key.width * widthBucket);
+            path.setStrokeLineCap(BUTT);
+            path.setFill(null);
+        }
+
+        private void add(SankeyLink link) {
+            links.add(link);
+            dirty = true;
+        }
+
+        private void remove(SankeyLink link) {
+            links.remove(link);
+            dirty = true;
+        }
+
+        private void rebuild() {
+            List<PathElement> elements = new ArrayList<>(2 * links.size());
+            for (SankeyLink link : links) {
+                elements.add(new MoveTo(link.getStartX(), link.getStartY()));
+                elements.add(new CubicCurveTo(
+                        link.getControlX1(), link.getControlY1(),
+                        link.getControlX2(), link.getControlY2(),
+                        link.getEndX(), link.getEndY()));
+            }
+            path.getElements().setAll(elements);
+            dirty = false;
+        }
+    }
+
+    private static final class BatchKey {
+        private final Paint stroke;
+        private final double opacity;
+        private final long width;
+
+        private BatchKey(Paint stroke, double opacity, long width) {
+            this.stroke = stroke;
+            this.opacity = opacity;
+            this.width = width;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Objects.hashCode(stroke);
+            result = 31 * result + Double.hashCode(opacity);
+            result = 31 * result + Long.hashCode(width);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            BatchKey that = (BatchKey) o;
+
+            if (Double.compare(that.opacity, opacity) != 0) return false;
+            if (width != that.width) return false;
+            return Objects.equals(stroke, that.stroke);
+        }
+    }
+
+    private static final class LinkState {
+        private BatchKey key;
+        private final double[] geometry = new double[8];
+
+        private LinkState(BatchKey key) {
+            this.key = key;
+        }
+
+        private boolean hasMoved(SankeyLink link) {
+            return geometry[0] != link.getStartX() || geometry[1] != link.getStartY()
+                    || geometry[2] != link.getControlX1() || geometry[3] != link.getControlY1()
+                    || geometry[4] != link.getControlX2() || geometry[5] != link.getControlY2()
+                    || geometry[6] != link.getEndX() || geometry[7] != link.getEndY();
+        }
+
+        private void copyGeometry(SankeyLink link) {
+            geometry[0] = link.getStartX();
+            geometry[1] = link.getStartY();
+            geometry[2] = link.getControlX1();
+            geometry[3] = link.getControlY1();
+            geometry[4] = link.getControlX2();
+            geometry[5] = link.getControlY2();
+            geometry[6] = link.getEndX();
+            geometry[7] = link.getEndY();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package javafx.scene.chart;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+
+/**
+ * Feed the values of links from any thread.
+ *
+ * Producers call {@link #offer(int, double)} with the key of a link,
+ * which is its index in the list given at construction. The updates of
+ * a link are conflated: only its latest value is kept until the next
+ * drain. The links waiting for a drain are kept in a lock-free bounded
+ * queue; when it is full the update is dropped and {@code offer}
+ * returns false so the producer can slow down. A producer reserves a
+ * cell of the queue before marking a link as queued, so an update is
+ * only conflated with one which cannot be dropped anymore, and neither
+ * the producers nor the drain ever wait for each other.
+ *
+ * The values are applied to the links on the JavaFX application thread,
+ * once per pulse after {@link #start()}, or by calling {@link #drain()}.
+ */
+public final class SankeyLinkFeed {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // states of a link in pending
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+
+    private final List<SankeyLink> links;
+
+    // latest value of each link, as raw long bits
+    private final AtomicLongArray values;
+    // whether the link is waiting for a drain
+    private final AtomicIntegerArray pending;
+    // time at which the link entered the queue
+    private final AtomicLongArray enqueuedAt;
+    private final KeyQueue queue;
+    // cells of the queue reserved by the links waiting for a drain
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong applied = new AtomicLong();
+
+    private volatile long lastLagNanos = 0;
+    private volatile long maxLagNanos = 0;
+    private volatile double throughput = 0.0;
+    private long throughputSampledAt = System.nanoTime();
+    private long receivedAtLastSample = 0;
+
+    private AnimationTimer timer;
+
+    /**
+     * @param links links fed by this adapter, the key of a link is its
+     *              index in this list
+     * @param capacity maximum number of links waiting for a drain,
+     *                 rounded up to a power of two of at least 2
+     */
+    public SankeyLinkFeed(List<SankeyLink> links, int capacity) {
+        checkArgument(links != null, "links cannot be null");
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+
+        this.links = new ArrayList<>(links);
+        this.values = new AtomicLongArray(links.size());
+        this.pending = new AtomicIntegerArray(links.size());
+        this.enqueuedAt = new AtomicLongArray(links.size());
+        this.queue = new KeyQueue(capacity);
+    }
+
+    /**
+     * Submit a new value for a link. Can be called from any thread.
+     *
+     * @param key the index of the link
+     * @param value the new value of the link
+     * @return false if the update has been dropped because the queue
+     * is full
+     */
+    public boolean offer(int key, double value) {
+        checkArgument(key >= 0 && key < links.size(), "unknown link key");
+
+        received.increment();
+        values.set(key, doubleToRawLongBits(value));
+        if (pending.get(key) == QUEUED) {
+            // already waiting for a drain which will read the new value
+            conflated.increment();
+            return true;
+        }
+        if (reserved.incrementAndGet() > queue.capacity()) {
+            reserved.decrementAndGet();
+            if (pending.get(key) == QUEUED) {
+                conflated.increment();
+                return true;
+            }
+            dropped.increment();
+            return false;
+        }
+        if (!pending.compareAndSet(key, IDLE, QUEUED)) {
+            // queued by another producer in the meantime
+            reserved.decrementAndGet();
+            conflated.increment();
+            return true;
+        }
+        enqueuedAt.set(key, System.nanoTime());
+        queue.offer(key);
+        return true;
+    }
+
+    /**
+     * Apply the pending values to the links. Must be called from the
+     * thread owning the chart, the JavaFX application thread once the
+     * chart is displayed. Only the links pending when the drain starts
+     * are updated, so it ends even if producers keep offering.
+     *
+     * @return the number of links updated
+     */
+    public int drain() {
+        long now = System.nanoTime();
+        long maxLag = maxLagNanos;
+        long lag = 0;
+        int limit = queue.size();
+        int count = 0;
+        int key;
+        while (count < limit && (key = queue.poll()) >= 0) {
+            // links are marked as queued before entering the queue, and
+            // cleared before reading the value so a concurrent offer
+            // either is read now or enqueues the link again
+            pending.set(key, IDLE);
+            reserved.decrementAndGet();
+            lag = Math.max(lag, now - enqueuedAt.get(key));
+            links.get(key).setValue(longBitsToDouble(values.get(key)));
+            count++;
+        }
+        if (count > 0) {
+            lastLagNanos = lag;
+            maxLagNanos = Math.max(maxLag, lag);
+            applied.addAndGet(count);
+        }
+        sampleThroughput(now);
+        return count;
+    }
+
+    /**
+     * Drain the feed at each JavaFX pulse.
+     */
+    public void start() {
+        if (timer == null) {
+            timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    drain();
+                }
+            };
+        }
+        timer.start();
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * @return the number of updates submitted
+     */
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    /**
+     * @return the number of updates replaced by a later value of the
+     * same link before being applied
+     */
+    public long getConflatedCount() {
+        return conflated.sum();
+    }
+
+    /**
+     * @return the number of updates dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of values applied to the links
+     */
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    /**
+     * @return the number of links waiting for a drain
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return the longest time, in nanoseconds, a link waited between
+     * its first pending update and its drain, at the last drain
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    /**
+     * @return the longest lag, in nanoseconds, since the creation of
+     * the feed
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * @return the number of updates submitted per second, measured
+     * over the last second of drains
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    private void sampleThroughput(long now) {
+        long elapsed = now - throughputSampledAt;
+        if (elapsed >= NANOS_PER_SECOND) {
+            long total = received.sum();
+            throughput = (double) (total - receivedAtLastSample) * NANOS_PER_SECOND / elapsed;
+            receivedAtLastSample = total;
+            throughputSampledAt = now;
+        }
+    }
+
+    /**
+     * Bounded multi-producer single-consumer queue of link keys.
+     *
+     * Each cell carries a sequence number telling whether it is ready to
+     * be written for a given position (sequence == position) or to be
+     * read (sequence == position + 1). A cell being written is seen as
+     * empty until its producer publishes it, so polling never waits.
+     */
+    private static final class KeyQueue {
+        private final int mask;
+        private final int[] keys;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0;
+
+        private KeyQueue(int capacity) {
+            // a single cell could not tell a full queue from an empty one
+            int size = Math.max(2, Integer.highestOneBit(capacity));
+            size = size < capacity ? size << 1 : size;
+            this.mask = size - 1;
+            this.keys = new int[size];
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        /**
+         * Add a key. The caller must have reserved a cell, so the queue
+         * is not full.
+         */
+        private void offer(int key) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                // otherwise another producer took the position, try the next one
+                if (sequences.get(index) == position && tail.compareAndSet(position, position + 1)) {
+                    keys[index] = key;
+                    sequences.lazySet(index, position + 1);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the next key, or -1 if the queue is empty
+         */
+        private int poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return -1;
+            }
+            int key = keys[index];
+            sequences.lazySet(index, position + mask + 1);
+            head = position + 1;
+            return key;
+        }
+
+        private int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package javafx.scene.chart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.Math.max;
+import static java.util.Comparator.comparingDouble;
+
+/**
+ * Filter out the links whose value is below a threshold and keep the
+ * values of the nodes and the totals of the columns up to date.
+ *
+ * The links are indexed by increasing value, so moving the threshold
+ * only visits the links crossing it: O(log n + k) for n links of which
+ * k are shown or hidden. When the value of a link changes, the link is
+ * moved to its new place in the index. In both cases the values of the
+ * nodes these links touch are summed again from their shown links, and
+ * the nodes are reported by {@link #getChangedNodes()} so the layout can
+ * be limited to their links.
+ *
+ * The totals of the columns are running sums of the changes of the node
+ * values. They are reset to 0 when no node of a column has a value and
+ * recomputed from the nodes after as many changes as there are nodes,
+ * so rounding errors cannot pile up.
+ *
+ * The index is only rebuilt when links or nodes are added or removed.
+ */
+final class SankeyLinkFilter {
+
+    private static final SankeyLink[] NO_LINKS = new SankeyLink[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    private double threshold = 0.0;
+
+    private boolean stale = true;
+    private SankeyLink[] sortedLinks = NO_LINKS;
+    private double[] sortedValues = NO_VALUES;
+    // index of each link in sortedLinks
+    private final Map<SankeyLink, Integer> indexes = new IdentityHashMap<>();
+    // index of the first shown link in sortedLinks
+    private int shownFrom = 0;
+
+    private final Map<SankeyNode, Flows> flows = new HashMap<>();
+    private double[] columnTotals = new double[0];
+    // number of nodes with a value in each column
+    private int[] valuedNodes = new int[0];
+    // changes of node values added to columnTotals since it was computed
+    private int columnUpdates = 0;
+
+    // nodes touched by a link shown, hidden or changed of value
+    private final Set<SankeyNode> changedNodes = new HashSet<>();
+
+    double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Show the links whose value is greater than or equal to the
+     * threshold and filter out the others.
+     *
+     * @param threshold minimum value of a shown link
+     */
+    void setThreshold(double threshold) {
+        this.threshold = threshold;
+        if (stale) {
+            return;
+        }
+
+        int newShownFrom = firstIndexNotBelow(threshold);
+        for (int i = newShownFrom; i < shownFrom; i++) {
+            setShown(i, true);
+        }
+        for (int i = shownFrom; i < newShownFrom; i++) {
+            setShown(i, false);
+        }
+        shownFrom = newShownFrom;
+    }
+
+    /**
+     * Move the given link to the place of its new value in the index
+     * and update the value of its nodes.
+     *
+     * @param link link whose value changed
+     */
+    void valueHasChangedFor(SankeyLink link) {
+        Integer index = indexes.get(link);
+        if (stale || index == null) {
+            return;
+        }
+
+        double oldValue = sortedValues[index];
+        double newValue = link.getValue();
+
+        int i = index;
+        while (i + 1 < sortedLinks.length && sortedValues[i + 1] < newValue) {
+            moveTo(i + 1, i);
+            i++;
+        }
+        while (i > 0 && sortedValues[i - 1] > newValue) {
+            moveTo(i - 1, i);
+            i--;
+        }
+        sortedLinks[i] = link;
+        sortedValues[i] = newValue;
+        indexes.put(link, i);
+        // the other links keep their side of the threshold
+        shownFrom += (newValue < threshold ? 1 : 0) - (oldValue < threshold ? 1 : 0);
+
+        link.setFiltered(newValue < threshold);
+        updateValueOf(link.getSource());
+        updateValueOf(link.getTarget());
+    }
+
+    /**
+     * Mark the index as out of date, it will be rebuilt by the next
+     * call to {@link #refresh(Collection, Collection)}. The links and
+     * nodes are released until then.
+     */
+    void invalidate() {
+        stale = true;
+        sortedLinks = NO_LINKS;
+        sortedValues = NO_VALUES;
+        indexes.clear();
+        shownFrom = 0;
+        flows.clear();
+        changedNodes.clear();
+    }
+
+    /**
+     * Rebuild the index if it is out of date, filter out the links
+     * below the threshold and compute the value of each node.
+     *
+     * @param nodes nodes of the chart
+     * @param links links of the chart
+     */
+    void refresh(Collection<SankeyNode> nodes, Collection<SankeyLink> links) {
+        if (!stale) {
+            return;
+        }
+
+        sortedLinks = links.toArray(new SankeyLink[links.size()]);
+        Arrays.sort(sortedLinks, comparingDouble(SankeyLink::getValue));
+        sortedValues = Arrays.stream(sortedLinks)
+                .mapToDouble(SankeyLink::getValue)
+                .toArray();
+        shownFrom = firstIndexNotBelow(threshold);
+
+        flows.clear();
+        nodes.stream()
+                .forEach(node -> flows.put(node, new Flows(node.getHorizontalPosition())));
+        for (int i = 0; i < sortedLinks.length; i++) {
+            SankeyLink link = sortedLinks[i];
+            indexes.put(link, i);
+            link.setFiltered(i < shownFrom);
+            Flows sourceFlows = flows.get(link.getSource());
+            if (sourceFlows != null) {
+                sourceFlows.outgoingLinks.add(link);
+            }
+            Flows targetFlows = flows.get(link.getTarget());
+            if (targetFlows != null) {
+                targetFlows.incomingLinks.add(link);
+            }
+        }
+
+        for (Map.Entry<SankeyNode, Flows> entry : flows.entrySet()) {
+            Flows nodeFlows = entry.getValue();
+            nodeFlows.value = nodeFlows.shownValue();
+            entry.getKey().setValue(nodeFlows.value);
+        }
+        computeColumnTotals();
+        changedNodes.clear();
+        stale = false;
+    }
+
+    /**
+     * Move the value of the nodes which changed of column since the
+     * last call to the total of their new column.
+     *
+     * @param nodes nodes of the chart
+     */
+    void updateColumns(Collection<SankeyNode> nodes) {
+        for (SankeyNode node : nodes) {
+            Flows nodeFlows = flows.get(node);
+            if (nodeFlows != null && nodeFlows.column != node.getHorizontalPosition()) {
+                int valued = nodeFlows.value != 0 ? 1 : 0;
+                addToColumn(nodeFlows.column, -nodeFlows.value, -valued);
+                nodeFlows.column = node.getHorizontalPosition();
+                addToColumn(nodeFlows.column, nodeFlows.value, valued);
+            }
+        }
+    }
+
+    /**
+     * @param column a column of the chart
+     * @return the sum of the values of the nodes in the column
+     */
+    double columnTotal(int column) {
+        return column < columnTotals.length ? columnTotals[column] : 0.0;
+    }
+
+    /**
+     * @return the total of the biggest column, 0 if there is none
+     */
+    double maxColumnTotal() {
+        return Arrays.stream(columnTotals)
+                .max()
+                .orElse(0.0);
+    }
+
+    /**
+     * @return the nodes touched by a link shown, filtered out or changed
+     * of value since the last call to {@link #clearChangedNodes()}
+     */
+    Collection<SankeyNode> getChangedNodes() {
+        return changedNodes;
+    }
+
+    void clearChangedNodes() {
+        changedNodes.clear();
+    }
+
+    /**
+     * @param node a node of the chart
+     * @return the links coming from the node, filtered out or not
+     */
+    Collection<SankeyLink> linksFrom(SankeyNode node) {
+        Flows nodeFlows = flows.get(node);
+        return nodeFlows != null ? nodeFlows.outgoingLinks : Collections.emptyList();
+    }
+
+    /**
+     * @param node a node of the chart
+     * @return the links targeting the node, filtered out or not
+     */
+    Collection<SankeyLink> linksTo(SankeyNode node) {
+        Flows nodeFlows = flows.get(node);
+        return nodeFlows != null ? nodeFlows.incomingLinks : Collections.emptyList();
+    }
+
+    private void setShown(int index, boolean shown) {
+        SankeyLink link = sortedLinks[index];
+        link.setFiltered(!shown);
+        updateValueOf(link.getSource());
+        updateValueOf(link.getTarget());
+    }
+
+    /**
+     * Copy the entry at {@code from} of the index to {@code to}.
+     */
+    private void moveTo(int from, int to) {
+        sortedLinks[to] = sortedLinks[from];
+        sortedValues[to] = sortedValues[from];
+        indexes.put(sortedLinks[to], to);
+    }
+
+    private void updateValueOf(SankeyNode node) {
+        Flows nodeFlows = flows.get(node);
+        if (nodeFlows == null) {
+            return;
+        }
+        changedNodes.add(node);
+        double value = nodeFlows.shownValue();
+        if (value != nodeFlows.value) {
+            addToColumn(nodeFlows.column, value - nodeFlows.value,
+                    (value != 0 ? 1 : 0) - (nodeFlows.value != 0 ? 1 : 0));
+            nodeFlows.value = value;
+            node.setValue(value);
+            if (++columnUpdates > flows.size()) {
+                computeColumnTotals();
+            }
+        }
+    }
+
+    private void computeColumnTotals() {
+        Arrays.fill(columnTotals, 0.0);
+        Arrays.fill(valuedNodes, 0);
+        for (Flows nodeFlows : flows.values()) {
+            addToColumn(nodeFlows.column, nodeFlows.value, nodeFlows.value != 0 ? 1 : 0);
+        }
+        columnUpdates = 0;
+    }
+
+    /**
+     * @param column column of the chart
+     * @param value value to add to its total
+     * @param valuedNodes number of nodes with a value to add to the column
+     */
+    private void addToColumn(int column, double value, int valuedNodes) {
+        if (column >= columnTotals.length) {
+            int length = max(column + 1, 2 * columnTotals.length);
+            columnTotals = Arrays.copyOf(columnTotals, length);
+            this.valuedNodes = Arrays.copyOf(this.valuedNodes, length);
+        }
+        this.valuedNodes[column] += valuedNodes;
+        // no rounding error is left once nothing is shown in the column
+        columnTotals[column] = this.valuedNodes[column] > 0 ? columnTotals[column] + value : 0.0;
+    }
+
+    /**
+     * @return the index of the first link whose value is not below the
+     * given value, or the number of links if there is none
+     */
+    private int firstIndexNotBelow(double value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static final class Flows {
+        private double value;
+        private int column;
+        private final List<SankeyLink> incomingLinks = new ArrayList<>();
+        private final List<SankeyLink> outgoingLinks = new ArrayList<>();
+
+        private Flows(int column) {
+            this.column = column;
+        }
+
+        /**
+         * @return the biggest of the sums of the shown incoming and
+         * outgoing links
+         */
+        private double shownValue() {
+            return max(sumOfShown(incomingLinks), sumOfShown(outgoingLinks));
+        }
+
+        private static double sumOfShown(List<SankeyLink> links) {
+            double sum = 0.0;
+            for (SankeyLink link : links) {
+                if (!link.isFiltered()) {
+                    sum += link.getValue();
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -33,6 +33,18 @@ public class SankeyNode extends Rectangle {
         }
     };
 
+    public String getName() {
+        return name.get();
+    }
+
+    public void setName(String name) {
+        this.name.set(name);
+    }
+
+    public StringProperty nameProperty() {
+        return name;
+    }
+
     private Double value;
 
     private int horizontalPosition;
@@ -68,10 +80,24 @@ public class SankeyNode extends Rectangle {
      */
     private ReadOnlyObjectWrapper<SankeyChart> chart = new ReadOnlyObjectWrapper<>(null, "chart");
 
+    /**
+     * Attach the node to the given chart, or detach it when
+     * {@code chart} is null.
+     *
+     * @param chart the chart displaying this node
+     */
     public void setChart(SankeyChart chart) {
         this.chart.set(chart);
     }
 
+    public SankeyChart getChart() {
+        return chart.get();
+    }
+
+    public ReadOnlyObjectWrapper<SankeyChart> chartProperty() {
+        return chart;
+    }
+
     public SankeyNode(String name) {
         super(0, 0, 0, 0);
         this.name.setValue(name);
@@ -100,7 +126,9 @@ public class SankeyNode extends Rectangle {
                     this.setY(this.getY() + t.getSceneY() - originalY);
                     originalX = t.getSceneX();
                     originalY = t.getSceneY();
-                    chart.get().positionHasChangedFor(this);
+                    if (chart.get() != null) {
+                        chart.get().positionHasChangedFor(this);
+                    }
                 }
             };
 
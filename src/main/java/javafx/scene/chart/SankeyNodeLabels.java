@@ -0,0 +1,368 @@
+package javafx.scene.chart;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Comparator.comparingDouble;
+
+/**
+ * Draw the name of each node next to it.
+ *
+ * A label is placed on the right of its node, or on its left when it
+ * would go past the right of the frame. Labels are given to the biggest
+ * nodes first and a label overlapping an already placed one is hidden;
+ * the overlaps are found with a spatial hash so the placement stays
+ * linear in the number of labels. The labels are kept sorted by
+ * priority across updates: only the labels whose node changed of value
+ * are sorted again and merged back, so a pass is O(n + k log k) for k
+ * nodes changed of value out of n.
+ *
+ * Text measurements are cached per name and font, and the text nodes
+ * are only touched for the nodes whose name, size or position changed.
+ * The text nodes are kept in their own group, which the chart keeps
+ * above the nodes and the links.
+ */
+final class SankeyNodeLabels {
+
+    private static final double GAP = 6;
+    private static final int MAX_CACHED_METRICS = 4096;
+
+    private final Group group = new Group();
+
+    private Font font = Font.getDefault();
+
+    private static final Comparator<Label> BY_PRIORITY =
+            comparingDouble((Label label) -> label.priority).reversed();
+
+    private final Map<SankeyNode, Label> labels = new HashMap<>();
+    // labels from the highest priority to the lowest, the ones to
+    // reprioritize are out of place until the next pass
+    private List<Label> byPriority = new ArrayList<>();
+    // new labels and labels whose priority changed since the last pass
+    private final List<Label> reprioritized = new ArrayList<>();
+    // set when the overlaps must be checked again at the next update
+    private boolean cullingNeeded = false;
+
+    private final Map<MetricsKey, double[]> metrics = new LinkedHashMap<MetricsKey, double[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MetricsKey, double[]> eldest) {
+            return size() > MAX_CACHED_METRICS;
+        }
+    };
+    private final Text measuringText = new Text();
+
+    SankeyNodeLabels() {
+        group.setMouseTransparent(true);
+    }
+
+    /**
+     * @return the group holding the text of the labels
+     */
+    Group getGroup() {
+        return group;
+    }
+
+    Font getFont() {
+        return font;
+    }
+
+    void setFont(Font font) {
+        checkArgument(font != null, "font cannot be null");
+        this.font = font;
+        labels.values().stream()
+                .forEach(label -> {
+                    label.text.setFont(font);
+                    label.invalidate();
+                });
+    }
+
+    /**
+     * Place the labels of the given nodes.
+     *
+     * @param nodes nodes to label
+     * @param right x coordinate of the right of the frame
+     */
+    void update(Collection<SankeyNode> nodes, double right) {
+        for (SankeyNode node : nodes) {
+            cullingNeeded |= labelFor(node).place(node, right);
+        }
+        if (!cullingNeeded) {
+            return;
+        }
+        cullingNeeded = false;
+
+        reorderByPriority();
+        SpatialHash placed = new SpatialHash(measure("X")[1]);
+        for (Label label : byPriority) {
+            boolean visible = label.width > 0 && !placed.overlaps(label);
+            if (visible) {
+                placed.add(label);
+            }
+            if (label.text.isVisible() != visible) {
+                label.text.setVisible(visible);
+            }
+        }
+    }
+
+    /**
+     * Remove the label of the given node.
+     *
+     * @param node node that is not displayed anymore
+     */
+    void remove(SankeyNode node) {
+        Label label = labels.remove(node);
+        if (label != null) {
+            group.getChildren().remove(label.text);
+            if (label.reprioritized) {
+                reprioritized.remove(label);
+            }
+            byPriority.remove(label);
+            cullingNeeded = true;
+        }
+    }
+
+    /**
+     * Remove all the labels.
+     */
+    void clear() {
+        group.getChildren().clear();
+        labels.clear();
+        byPriority.clear();
+        reprioritized.clear();
+    }
+
+    Text textFor(SankeyNode node) {
+        Label label = labels.get(node);
+        return label != null ? label.text : null;
+    }
+
+    /**
+     * Measure the given text with the current font.
+     *
+     * @param name text to measure
+     * @return the width and the height of the text
+     */
+    double[] measure(String name) {
+        MetricsKey key = new MetricsKey(name, font);
+        double[] size = metrics.get(key);
+        if (size == null) {
+            measuringText.setFont(font);
+            measuringText.setText(name);
+            Bounds bounds = measuringText.getLayoutBounds();
+            size = new double[]{bounds.getWidth(), bounds.getHeight()};
+            metrics.put(key, size);
+        }
+        return size;
+    }
+
+    int numberOfCachedMetrics() {
+        return metrics.size();
+    }
+
+    private Label labelFor(SankeyNode node) {
+        Label label = labels.get(node);
+        if (label == null) {
+            label = new Label();
+            labels.put(node, label);
+            group.getChildren().add(label.text);
+            label.reprioritize();
+        }
+        return label;
+    }
+
+    /**
+     * Sort the labels to reprioritize and merge them with the others,
+     * which are still sorted.
+     */
+    private void reorderByPriority() {
+        if (reprioritized.isEmpty()) {
+            return;
+        }
+        byPriority.removeIf(label -> label.reprioritized);
+        reprioritized.sort(BY_PRIORITY);
+
+        List<Label> merged = new ArrayList<>(byPriority.size() + reprioritized.size());
+        int i = 0;
+        int j = 0;
+        while (i < byPriority.size() && j < reprioritized.size()) {
+            if (BY_PRIORITY.compare(reprioritized.get(j), byPriority.get(i)) < 0) {
+                merged.add(reprioritized.get(j++));
+            } else {
+                merged.add(byPriority.get(i++));
+            }
+        }
+        merged.addAll(byPriority.subList(i, byPriority.size()));
+        merged.addAll(reprioritized.subList(j, reprioritized.size()));
+
+        reprioritized.stream()
+                .forEach(label -> label.reprioritized = false);
+        reprioritized.clear();
+        byPriority = merged;
+    }
+
+    private final class Label {
+        private final Text text = new Text();
+
+        // state of the node at the last placement
+        private String name;
+        private double nodeX = Double.NaN;
+        private double nodeY;
+        private double nodeWidth;
+        private double nodeHeight;
+        private double right;
+
+        private double priority;
+        // true while in the list of labels to reprioritize
+        private boolean reprioritized;
+        private double x;
+        private double y;
+        private double width;
+        private double height;
+
+        private Label() {
+            text.setFont(font);
+            text.setTextOrigin(VPos.TOP);
+            text.setMouseTransparent(true);
+        }
+
+        private void invalidate() {
+            nodeX = Double.NaN;
+        }
+
+        private void reprioritize() {
+            if (!reprioritized) {
+                reprioritized = true;
+                SankeyNodeLabels.this.reprioritized.add(this);
+            }
+        }
+
+        /**
+         * @return true if the label has been moved or changed, or if its
+         * priority changed
+         */
+        private boolean place(SankeyNode node, double right) {
+            boolean priorityChanged = node.getValue() != priority;
+            priority = node.getValue();
+            if (priorityChanged) {
+                reprioritize();
+            }
+            String name = node.getName() != null ? node.getName() : "";
+            if (name.equals(this.name) && node.getX() == nodeX && node.getY() == nodeY
+                    && node.getWidth() == nodeWidth && node.getHeight() == nodeHeight && right == this.right) {
+                return priorityChanged;
+            }
+
+            if (!name.equals(this.name)) {
+                text.setText(name);
+            }
+            this.name = name;
+            this.nodeX = node.getX();
+            this.nodeY = node.getY();
+            this.nodeWidth = node.getWidth();
+            this.nodeHeight = node.getHeight();
+            this.right = right;
+
+            double[] size = measure(name);
+            width = size[0];
+            height = size[1];
+            x = nodeX + nodeWidth + GAP + width <= right ?
+                    nodeX + nodeWidth + GAP :
+                    nodeX - GAP - width;
+            y = nodeY + (nodeHeight - height) / 2;
+            text.setX(x);
+            text.setY(y);
+            return true;
+        }
+
+        private boolean overlaps(Label other) {
+            return x < other.x + other.width && other.x < x + width
+                    && y < other.y + other.height && other.y < y + height;
+        }
+    }
+
+    /**
+     * Uniform grid of square cells as high as a line of text. A label
+     * is added to every cell it spans, so a long name only costs more
+     * cells, and as placed labels do not overlap each cell holds a
+     * bounded number of labels.
+     */
+    private static final class SpatialHash {
+        private final double cellSize;
+        private final Map<Long, List<Label>> cells = new HashMap<>();
+
+        /**
+         * @param lineHeight height of a line of text with the font of
+         *                   the labels
+         */
+        private SpatialHash(double lineHeight) {
+            this.cellSize = Math.max(1, lineHeight);
+        }
+
+        private boolean overlaps(Label label) {
+            for (int i = column(label.x); i <= column(label.x + label.width); i++) {
+                for (int j = row(label.y); j <= row(label.y + label.height); j++) {
+                    List<Label> cell = cells.get(key(i, j));
+                    if (cell != null) {
+                        for (Label other : cell) {
+                            if (label.overlaps(other)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void add(Label label) {
+            for (int i = column(label.x); i <= column(label.x + label.width); i++) {
+                for (int j = row(label.y); j <= row(label.y + label.height); j++) {
+                    cells.computeIfAbsent(key(i, j), k -> new ArrayList<>(2)).add(label);
+                }
+            }
+        }
+
+        private int column(double x) {
+            return (int) Math.floor(x / cellSize);
+        }
+
+        private int row(double y) {
+            return (int) Math.floor(y / cellSize);
+        }
+
+        private static long key(int column, int row) {
+            return ((long) column << 32) | (row & 0xFFFFFFFFL);
+        }
+    }
+
+    private static final class MetricsKey {
+        private final String name;
+        private final Font font;
+
+        private MetricsKey(String name, Font font) {
+            this.name = name;
+            this.font = font;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + font.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            MetricsKey that = (MetricsKey) o;
+
+            return name.equals(that.name) && font.equals(that.font);
+        }
+    }
+}
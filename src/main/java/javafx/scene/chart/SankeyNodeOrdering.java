@@ -0,0 +1,387 @@
+package javafx.scene.chart;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Order the nodes inside each column of a sankey diagram in order to
+ * limit the number of crossings between links.
+ *
+ * The ordering is computed with weighted barycenter layer sweeps: each
+ * column is sorted according to the mean position of the nodes it is
+ * linked to, going alternatively from the left to the right and from
+ * the right to the left. The ordering with the fewest crossings seen
+ * so far is kept, so stopping at any time gives a usable result.
+ *
+ * The crossings are counted per gap between two columns and only the
+ * gaps crossed by the links of a column which moved are counted again.
+ * The time budget is checked before each column and during the count
+ * of each gap, so it is exceeded by at most one merge pass or one
+ * column.
+ *
+ * Nodes and links are identified by their index and everything is
+ * stored in primitive arrays, a sweep does not allocate.
+ */
+final class SankeyNodeOrdering {
+
+    private final int[] column;
+    private final int[] linkSource;
+    private final int[] linkTarget;
+    private final double[] linkWeight;
+
+    private final int[][] layers;
+    private final int[][] bestLayers;
+
+    // links of each node stored contiguously, the links of node n are
+    // at indexes start[n] (inclusive) to start[n + 1] (exclusive)
+    private final int[] incomingStart;
+    private final int[] incomingLinks;
+    private final int[] outgoingStart;
+    private final int[] outgoingLinks;
+
+    // links crossing each gap between columns c and c + 1, stored like
+    // the links of the nodes
+    private final int[] gapStart;
+    private final int[] linksInGap;
+    // range of the gaps crossed by the links of each column
+    private final int[] affectedFrom;
+    private final int[] affectedTo;
+
+    private final long[] gapCrossings;
+    private final boolean[] dirtyGaps;
+
+    // end of the time budget of the running call to order
+    private long deadline;
+    private boolean bounded = false;
+
+    // relative position of each node inside its column, in ]0, 1[
+    private final double[] position;
+
+    // scratch buffers
+    private final double[] nodeKey;
+    private final double[] upperKey;
+    private final double[] lowerKey;
+    private final int[] gapLinks;
+    private final int[] sortBuffer;
+
+    /**
+     * @param column the column of each node
+     * @param linkSource the source node of each link
+     * @param linkTarget the target node of each link, which must be
+     *                   in a column strictly after the one of the source
+     * @param linkWeight the weight (value) of each link
+     * @param layers for each column, the nodes it contains in their
+     *               initial order. The arrays will be reordered in place.
+     */
+    SankeyNodeOrdering(int[] column, int[] linkSource, int[] linkTarget, double[] linkWeight, int[][] layers) {
+        checkArgument(linkSource.length == linkTarget.length && linkSource.length == linkWeight.length,
+                "links arrays must have the same length");
+
+        this.column = column;
+        this.linkSource = linkSource;
+        this.linkTarget = linkTarget;
+        this.linkWeight = linkWeight;
+        this.layers = layers;
+        this.bestLayers = new int[layers.length][];
+
+        int nodeCount = column.length;
+        int linkCount = linkSource.length;
+
+        this.incomingStart = new int[nodeCount + 1];
+        this.incomingLinks = new int[linkCount];
+        this.outgoingStart = new int[nodeCount + 1];
+        this.outgoingLinks = new int[linkCount];
+        indexLinks(linkTarget, incomingStart, incomingLinks);
+        indexLinks(linkSource, outgoingStart, outgoingLinks);
+
+        int gapCount = Math.max(layers.length - 1, 0);
+        this.gapStart = new int[gapCount + 1];
+        this.affectedFrom = new int[layers.length];
+        this.affectedTo = new int[layers.length];
+        for (int c = 0; c < layers.length; c++) {
+            affectedFrom[c] = c;
+            affectedTo[c] = c - 1;
+        }
+        for (int link = 0; link < linkCount; link++) {
+            int sourceColumn = column[linkSource[link]];
+            int targetColumn = column[linkTarget[link]];
+            for (int gap = sourceColumn; gap < targetColumn; gap++) {
+                gapStart[gap + 1]++;
+            }
+            for (int c : new int[]{sourceColumn, targetColumn}) {
+                affectedFrom[c] = Math.min(affectedFrom[c], sourceColumn);
+                affectedTo[c] = Math.max(affectedTo[c], targetColumn - 1);
+            }
+        }
+        for (int gap = 0; gap < gapCount; gap++) {
+            gapStart[gap + 1] += gapStart[gap];
+        }
+        this.linksInGap = new int[gapStart[gapCount]];
+        int[] next = gapStart.clone();
+        for (int link = 0; link < linkCount; link++) {
+            for (int gap = column[linkSource[link]]; gap < column[linkTarget[link]]; gap++) {
+                linksInGap[next[gap]++] = link;
+            }
+        }
+        this.gapCrossings = new long[gapCount];
+        this.dirtyGaps = new boolean[gapCount];
+
+        this.position = new double[nodeCount];
+        this.nodeKey = new double[nodeCount];
+        int maxGapSize = 0;
+        for (int gap = 0; gap < gapCount; gap++) {
+            maxGapSize = Math.max(maxGapSize, gapStart[gap + 1] - gapStart[gap]);
+        }
+        this.upperKey = new double[maxGapSize];
+        this.lowerKey = new double[maxGapSize];
+        this.gapLinks = new int[maxGapSize];
+
+        int maxLayerSize = 0;
+        for (int c = 0; c < layers.length; c++) {
+            checkArgument(layers[c] != null, "layers cannot contain null");
+            maxLayerSize = Math.max(maxLayerSize, layers[c].length);
+            bestLayers[c] = layers[c].clone();
+            updatePositions(c);
+        }
+        this.sortBuffer = new int[Math.max(maxLayerSize, linkCount)];
+    }
+
+    /**
+     * Compute an ordering of the nodes of each column.
+     *
+     * @param maxSweeps maximum number of sweeps, a sweep being a pass
+     *                  from the left to the right followed by a pass from
+     *                  the right to the left
+     * @param budgetNanos wall-clock time allowed for the computation
+     * @return for each column, the nodes it contains from top to bottom.
+     * If the budget runs out before any improvement, this is the
+     * initial ordering, which is returned without counting the
+     * crossings when there is no sweep or no budget.
+     */
+    int[][] order(int maxSweeps, long budgetNanos) {
+        if (maxSweeps == 0 || budgetNanos <= 0) {
+            return bestLayers;
+        }
+        deadline = System.nanoTime() + budgetNanos;
+        bounded = true;
+        try {
+            Arrays.fill(dirtyGaps, true);
+            long bestCrossings = countDirtyGaps();
+
+            for (int sweep = 0; sweep < maxSweeps && bestCrossings > 0; sweep++) {
+                for (int c = 1; c < layers.length; c++) {
+                    if (expired()) {
+                        return bestLayers;
+                    }
+                    reorder(c, true);
+                }
+                bestCrossings = keepIfBetter(bestCrossings);
+
+                for (int c = layers.length - 2; c >= 0 && bestCrossings > 0; c--) {
+                    if (expired()) {
+                        return bestLayers;
+                    }
+                    reorder(c, false);
+                }
+                bestCrossings = keepIfBetter(bestCrossings);
+            }
+            return bestLayers;
+        } finally {
+            bounded = false;
+        }
+    }
+
+    /**
+     * Count the number of crossings between links with the current
+     * ordering. A link spanning several columns is considered as a
+     * straight line going through each intermediate column.
+     *
+     * @return the number of crossing pairs of links
+     */
+    long countCrossings() {
+        long crossings = 0;
+        for (int gap = 0; gap < gapCrossings.length; gap++) {
+            crossings += countCrossingsIn(gap);
+        }
+        return crossings;
+    }
+
+    /**
+     * Count the crossings between the links going from column
+     * {@code gap} to column {@code gap + 1}. The keys of the links are
+     * stored contiguously so the sorts stay in cache.
+     *
+     * @return the number of crossings, or -1 if the deadline passed
+     */
+    private long countCrossingsIn(int gap) {
+        int count = 0;
+        for (int i = gapStart[gap]; i < gapStart[gap + 1]; i++) {
+            int link = linksInGap[i];
+            upperKey[count] = positionAt(link, gap);
+            lowerKey[count] = positionAt(link, gap + 1);
+            gapLinks[count] = count;
+            count++;
+        }
+        // sort by (upper, lower) then count the inversions on lower
+        if (sort(gapLinks, count, lowerKey, true) < 0 || sort(gapLinks, count, upperKey, true) < 0) {
+            return -1;
+        }
+        return sort(gapLinks, count, lowerKey, true);
+    }
+
+    /**
+     * Count again the crossings of the gaps changed since the last
+     * count.
+     *
+     * @return the number of crossings, or -1 if the deadline passed
+     */
+    private long countDirtyGaps() {
+        long crossings = 0;
+        for (int gap = 0; gap < gapCrossings.length; gap++) {
+            if (dirtyGaps[gap]) {
+                long gapCrossing = countCrossingsIn(gap);
+                if (gapCrossing < 0) {
+                    return -1;
+                }
+                gapCrossings[gap] = gapCrossing;
+                dirtyGaps[gap] = false;
+            }
+            crossings += gapCrossings[gap];
+        }
+        return crossings;
+    }
+
+    /**
+     * @return the fewest crossings seen, or -1 if the deadline passed
+     */
+    private long keepIfBetter(long bestCrossings) {
+        long crossings = countDirtyGaps();
+        if (crossings < 0) {
+            return -1;
+        }
+        if (crossings < bestCrossings) {
+            for (int c = 0; c < layers.length; c++) {
+                System.arraycopy(layers[c], 0, bestLayers[c], 0, layers[c].length);
+            }
+            return crossings;
+        }
+        return bestCrossings;
+    }
+
+    /**
+     * Sort the given column by the barycenter of the nodes linked to
+     * each of its nodes.
+     *
+     * @param c the column to sort
+     * @param fromLeft whether the barycenter is computed with the
+     *                 incoming links (true) or the outgoing ones (false)
+     */
+    private void reorder(int c, boolean fromLeft) {
+        int[] layer = layers[c];
+        if (layer.length < 2) {
+            return;
+        }
+        for (int node : layer) {
+            nodeKey[node] = fromLeft ?
+                    barycenter(node, incomingStart, incomingLinks, linkSource) :
+                    barycenter(node, outgoingStart, outgoingLinks, linkTarget);
+        }
+        if (sort(layer, layer.length, nodeKey, false) > 0) {
+            updatePositions(c);
+            for (int gap = affectedFrom[c]; gap <= affectedTo[c]; gap++) {
+                dirtyGaps[gap] = true;
+            }
+        }
+    }
+
+    private double barycenter(int node, int[] start, int[] links, int[] otherEnd) {
+        double weightedSum = 0.0;
+        double totalWeight = 0.0;
+        for (int i = start[node]; i < start[node + 1]; i++) {
+            int link = links[i];
+            double weight = Math.max(linkWeight[link], 0.0);
+            weightedSum += weight * position[otherEnd[link]];
+            totalWeight += weight;
+        }
+        return totalWeight > 0 ? weightedSum / totalWeight : position[node];
+    }
+
+    private double positionAt(int link, int c) {
+        int source = linkSource[link];
+        int target = linkTarget[link];
+        double ratio = (double) (c - column[source]) / (column[target] - column[source]);
+        return position[source] + ratio * (position[target] - position[source]);
+    }
+
+    private void updatePositions(int c) {
+        int[] layer = layers[c];
+        for (int i = 0; i < layer.length; i++) {
+            position[layer[i]] = (i + 0.5) / layer.length;
+        }
+    }
+
+    private boolean expired() {
+        return bounded && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Stable merge sort of the first {@code count} items by their key.
+     *
+     * @param interruptible whether to give up when the deadline passes,
+     *                      leaving the items in an unspecified order
+     * @return the number of pairs of items that were in the wrong order,
+     * or -1 if the sort has been interrupted
+     */
+    private long sort(int[] items, int count, double[] keys, boolean interruptible) {
+        long inversions = 0;
+        int[] from = items;
+        int[] to = sortBuffer;
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count; low += 2 * width) {
+                int middle = Math.min(low + width, count);
+                int high = Math.min(low + 2 * width, count);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    if (keys[from[j]] < keys[from[i]]) {
+                        inversions += middle - i;
+                        to[k++] = from[j++];
+                    } else {
+                        to[k++] = from[i++];
+                    }
+                }
+                while (i < middle) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+            if (interruptible && expired()) {
+                return -1;
+            }
+        }
+        if (from != items) {
+            System.arraycopy(from, 0, items, 0, count);
+        }
+        return inversions;
+    }
+
+    private static void indexLinks(int[] end, int[] start, int[] links) {
+        for (int node : end) {
+            start[node + 1]++;
+        }
+        for (int i = 0; i + 1 < start.length; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = start.clone();
+        for (int link = 0; link < end.length; link++) {
+            links[next[end[link]]++] = link;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package javafx.scene.chart;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.collections.ObservableSet;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Group;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.ref.WeakReference;
+
+import static javafx.collections.FXCollections.observableSet;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class SankeyChartLifecycleTest {
+    private static final int CYCLES = 1_000_000;
+    private static final long MAX_RETAINED_BYTES = 4L * 1024 * 1024;
+    private static final int CYCLES_PER_LAYOUT = 1_000;
+
+    private SankeyChart sankey;
+    private SankeyNode source;
+    private SankeyNode target;
+
+    @Before
+    public void setUp() {
+        new JFXPanel();
+
+        sankey = new SankeyChart();
+        source = new SankeyNode("source");
+        target = new SankeyNode("target");
+        sankey.addNode(source);
+        sankey.addNode(target);
+    }
+
+    @Test
+    public void removedElementsAreDetachedTest() {
+        SankeyLink link = new SankeyLink(source, target, 2.);
+        sankey.addLink(link);
+
+        assertThat(link.getChart(), is(sankey));
+
+        sankey.removeLink(link);
+        sankey.removeNode(target);
+
+        assertThat(link.getChart(), is(nullValue()));
+        assertThat(target.getChart(), is(nullValue()));
+        assertThat(sankey.getChartChildren().contains(link), is(false));
+        assertThat(sankey.getChartChildren().contains(target), is(false));
+    }
+
+    @Test
+    public void disposeDetachesElementsTest() {
+        SankeyNode node1 = new SankeyNode("node1");
+        SankeyNode node2 = new SankeyNode("node2");
+        SankeyLink link = new SankeyLink(node1, node2, 2.);
+        ObservableSet<SankeyNode> nodes = observableSet(node1, node2);
+        ObservableSet<SankeyLink> links = observableSet(link);
+        SankeyChart chart = new SankeyChart(nodes, links);
+
+        chart.dispose();
+        SankeyNode node3 = new SankeyNode("node3");
+        nodes.add(node3);
+
+        assertThat(node1.getChart(), is(nullValue()));
+        assertThat(link.getChart(), is(nullValue()));
+        assertThat(node3.getChart(), is(nullValue()));
+    }
+
+    @Test
+    public void sharedValueDoesNotRetainRemovedLinkTest() throws InterruptedException {
+        DoubleProperty sharedValue = new SimpleDoubleProperty(1.);
+        SankeyLink link = new SankeyLink(source, target, sharedValue);
+        sankey.addLink(link);
+        sankey.removeLink(link);
+
+        WeakReference<SankeyLink> reference = new WeakReference<>(link);
+        link = null;
+
+        assertThat(isCollected(reference), is(true));
+        sharedValue.set(2.);
+    }
+
+    @Test
+    public void setsDoNotRetainChartTest() throws InterruptedException {
+        ObservableSet<SankeyNode> nodes = observableSet();
+        ObservableSet<SankeyLink> links = observableSet();
+        WeakReference<SankeyChart> reference = new WeakReference<>(new SankeyChart(nodes, links));
+
+        assertThat(isCollected(reference), is(true));
+        SankeyNode node = new SankeyNode("node");
+        nodes.add(node);
+        assertThat(node.getChart(), is(nullValue()));
+    }
+
+    @Test
+    public void populatedSetsRetainChartUntilDisposedTest() throws InterruptedException {
+        SankeyNode node1 = new SankeyNode("node1");
+        SankeyNode node2 = new SankeyNode("node2");
+        ObservableSet<SankeyNode> nodes = observableSet(node1, node2);
+        ObservableSet<SankeyLink> links = observableSet(new SankeyLink(node1, node2, 2.));
+        WeakReference<SankeyChart> reference = new WeakReference<>(new SankeyChart(nodes, links));
+
+        assertThat(isCollected(reference), is(false));
+
+        reference.get().dispose();
+
+        assertThat(isCollected(reference), is(true));
+        assertThat(node1.getChart(), is(nullValue()));
+    }
+
+    @Category(SoakTest.class)
+    @Test(timeout = 120_000)
+    public void retainedHeapStaysFlatUnderChurnTest() throws InterruptedException {
+        // fill the state built by the layout: filter index, link
+        // batches, labels and text metrics
+        sankey.setBatchedLinks(true);
+        sankey.setNodeLabelsVisible(true);
+        sankey.resize(500, 500);
+        DoubleProperty sharedValue = new SimpleDoubleProperty(1.);
+        churn(sharedValue, CYCLES / 100);
+        long before = usedHeapAfterGc();
+
+        churn(sharedValue, CYCLES);
+        layout();
+        long after = usedHeapAfterGc();
+
+        // the two nodes and the group of their labels
+        assertThat(sankey.getChartChildren().size(), is(equalTo(3)));
+        Group labels = (Group) sankey.getChartChildren().get(2);
+        assertThat(labels.getChildren().size(), is(equalTo(2)));
+        assertThat(after - before, is(lessThan(MAX_RETAINED_BYTES)));
+    }
+
+    private void churn(DoubleProperty sharedValue, int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            SankeyNode node = new SankeyNode("node" + i);
+            SankeyLink link = new SankeyLink(source, node, sharedValue);
+            sankey.addNode(node);
+            sankey.addLink(link);
+            sharedValue.set(i);
+            if (i % CYCLES_PER_LAYOUT == 0) {
+                layout();
+            }
+            sankey.removeLink(link);
+            sankey.removeNode(node);
+        }
+    }
+
+    private void layout() {
+        sankey.layout();
+        // the content of the chart is a layout root of its own
+        source.getParent().layout();
+    }
+
+    private static boolean isCollected(WeakReference<?> reference) throws InterruptedException {
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return reference.get() == null;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
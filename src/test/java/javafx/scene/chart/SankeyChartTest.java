@@ -1,12 +1,16 @@
 package javafx.scene.chart;
 
 import javafx.embed.swing.JFXPanel;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.shape.Path;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 
 /**
  * @author Adrian Healey <adrian.j.healey@gmail.com>
@@ -105,4 +109,84 @@ public class SankeyChartTest {
         assertThat(sankey.sumOfLinksTargeting(node4), is(equalTo(7.0)));
     }
 
+    @Test
+    public void labelsStayAboveNodesAddedLaterTest() {
+        SankeyNode node5 = new SankeyNode("node5");
+        sankey.addNode(node5);
+
+        int last = sankey.getChartChildren().size() - 1;
+        assertThat(sankey.getChartChildren().get(last) instanceof Group, is(true));
+        assertThat(sankey.getChartChildren().indexOf(node5), is(equalTo(last - 1)));
+    }
+
+    @Test
+    public void minimumLinkValueOnlyMovesLinksOfChangedNodesTest() {
+        sankey.setNodeLabelsVisible(false);
+        sankey.resize(500, 500);
+        sankey.layout();
+        Parent content = node1.getParent();
+        content.layout();
+        link1.setStartX(-1);
+        double node4Height = node4.getHeight();
+
+        sankey.setMinimumLinkValue(1.5);
+        content.layout();
+
+        assertThat(link1.getStartX(), is(equalTo(-1.0)));
+        assertThat(sankey.getChartChildren().contains(link3), is(false));
+        assertThat(link3.isVisible(), is(true));
+        assertThat(node4.getHeight(), is(closeTo(node4Height * 6 / 7, 1e-9)));
+        assertThat(link4.getEndY(), is(equalTo(node4.getY() + link4.getStrokeWidth() / 2)));
+
+        sankey.setMinimumLinkValue(0.0);
+        content.layout();
+
+        assertThat(sankey.getChartChildren().contains(link3), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumLinkValueCannotBeNaNTest() {
+        sankey.setMinimumLinkValue(Double.NaN);
+    }
+
+    @Test
+    public void filteringOutEveryLinkFlattensNodesTest() {
+        link1.setValue(0.1);
+        link2.setValue(0.2);
+        link3.setValue(0.1);
+        link4.setValue(0.3);
+        sankey.setNodeLabelsVisible(false);
+        sankey.resize(500, 500);
+        sankey.layout();
+        Parent content = node1.getParent();
+        content.layout();
+
+        sankey.setMinimumLinkValue(1.0);
+        content.layout();
+
+        assertThat(node1.getHeight(), is(equalTo(0.0)));
+        assertThat(node2.getHeight(), is(equalTo(0.0)));
+        assertThat(node3.getHeight(), is(equalTo(0.0)));
+        assertThat(node4.getHeight(), is(equalTo(0.0)));
+    }
+
+    @Test
+    public void batchedLinkFollowsStyleChangeTest() {
+        sankey.setNodeLabelsVisible(false);
+        sankey.setBatchedLinks(true);
+        sankey.resize(500, 500);
+        sankey.layout();
+        Parent content = node1.getParent();
+        content.layout();
+        link2.setStartX(-1);
+
+        link1.setDarkerColor();
+
+        assertThat(sankey.getChartChildren().stream()
+                .anyMatch(child -> child instanceof Path && child.getOpacity() == 0.5), is(true));
+        // the links are not laid out again
+        content.layout();
+        assertThat(link2.getStartX(), is(equalTo(-1.0)));
+    }
+
 }
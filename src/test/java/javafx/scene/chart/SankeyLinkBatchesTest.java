@@ -0,0 +1,117 @@
+package javafx.scene.chart;
+
+import javafx.collections.ObservableList;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+import org.junit.Before;
+import org.junit.Test;
+
+import static javafx.collections.FXCollections.observableArrayList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SankeyLinkBatchesTest {
+    private ObservableList<Node> children;
+    private SankeyLinkBatches batches;
+
+    private SankeyLink link1;
+    private SankeyLink link2;
+    private SankeyLink link3;
+
+    @Before
+    public void setUp() {
+        new JFXPanel();
+
+        children = observableArrayList();
+        batches = new SankeyLinkBatches(children);
+
+        SankeyNode node1 = new SankeyNode("node1");
+        node1.setFill(Color.YELLOW);
+        SankeyNode node2 = new SankeyNode("node2");
+        node2.setFill(Color.FUCHSIA);
+        SankeyNode node3 = new SankeyNode("node3");
+
+        link1 = link(node1, node3, 0, 10.2);
+        link2 = link(node1, node3, 20, 9.8);
+        link3 = link(node2, node3, 40, 10);
+    }
+
+    private static SankeyLink link(SankeyNode source, SankeyNode target, double y, double width) {
+        SankeyLink link = new SankeyLink(source, target, width);
+        link.setStartY(y);
+        link.setEndX(100);
+        link.setEndY(y);
+        link.setStrokeWidth(width);
+        return link;
+    }
+
+    @Test
+    public void linksAreGroupedByColorAndWidthTest() {
+        batches.update(link1);
+        batches.update(link2);
+        batches.update(link3);
+        batches.flush();
+
+        assertThat(batches.numberOfBatches(), is(equalTo(2)));
+        assertThat(children.size(), is(equalTo(2)));
+        assertThat(batches.pathFor(link1), is(sameInstance(batches.pathFor(link2))));
+        assertThat(batches.pathFor(link1).getElements().size(), is(equalTo(4)));
+        assertThat(batches.pathFor(link1).getStrokeWidth(), is(equalTo(10.0)));
+    }
+
+    @Test
+    public void onlyChangedBatchIsRebuiltTest() {
+        batches.update(link1);
+        batches.update(link2);
+        batches.update(link3);
+        batches.flush();
+        Path path1 = batches.pathFor(link1);
+        Path path3 = batches.pathFor(link3);
+        PathElement element1 = path1.getElements().get(0);
+        PathElement element3 = path3.getElements().get(0);
+
+        link1.setEndY(50);
+        batches.update(link1);
+        batches.update(link2);
+        batches.update(link3);
+        batches.flush();
+
+        assertThat(path1.getElements().get(0), is(not(sameInstance(element1))));
+        assertThat(path3.getElements().get(0), is(sameInstance(element3)));
+    }
+
+    @Test
+    public void emptyBatchIsRemovedTest() {
+        batches.update(link3);
+        batches.flush();
+
+        batches.remove(link3);
+        batches.flush();
+
+        assertThat(batches.numberOfBatches(), is(equalTo(0)));
+        assertThat(children.isEmpty(), is(true));
+        assertThat(batches.pathFor(link3), is(nullValue()));
+    }
+
+    @Test
+    public void linkChangingWidthMovesToAnotherBatchTest() {
+        batches.update(link1);
+        batches.update(link2);
+        batches.flush();
+
+        link2.setStrokeWidth(3);
+        batches.update(link2);
+        batches.flush();
+
+        assertThat(batches.numberOfBatches(), is(equalTo(2)));
+        assertThat(batches.pathFor(link1).getElements().size(), is(equalTo(2)));
+        assertThat(batches.pathFor(link2).getStrokeWidth(), is(equalTo(3.0)));
+    }
+}
@@ -0,0 +1,172 @@
+package javafx.scene.chart;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class SankeyLinkFeedTest {
+    private static final int PRODUCERS = 4;
+    private static final int LINKS_PER_PRODUCER = 256;
+    private static final int UPDATES_PER_PRODUCER = 1_000_000;
+
+    private List<SankeyLink> links;
+
+    @Before
+    public void setUp() {
+        SankeyNode source = new SankeyNode("source");
+        SankeyNode target = new SankeyNode("target");
+        links = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS * LINKS_PER_PRODUCER; i++) {
+            links.add(new SankeyLink(source, target, 0.));
+        }
+    }
+
+    @Test
+    public void updatesOfSameLinkAreConflatedTest() {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, 16);
+
+        feed.offer(0, 1.);
+        feed.offer(0, 2.);
+        feed.offer(1, 3.);
+
+        assertThat(feed.getPendingCount(), is(equalTo(2)));
+        assertThat(feed.drain(), is(equalTo(2)));
+        assertThat(links.get(0).getValue(), is(equalTo(2.)));
+        assertThat(links.get(1).getValue(), is(equalTo(3.)));
+        assertThat(feed.getReceivedCount(), is(equalTo(3L)));
+        assertThat(feed.getConflatedCount(), is(equalTo(1L)));
+        assertThat(feed.getAppliedCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void updatesAreDroppedWhenQueueIsFullTest() {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, 2);
+
+        assertThat(feed.offer(0, 1.), is(true));
+        assertThat(feed.offer(1, 2.), is(true));
+        assertThat(feed.offer(2, 3.), is(false));
+        assertThat(feed.getDroppedCount(), is(equalTo(1L)));
+
+        assertThat(feed.drain(), is(equalTo(2)));
+        assertThat(feed.offer(2, 3.), is(true));
+        assertThat(feed.drain(), is(equalTo(1)));
+        assertThat(links.get(2).getValue(), is(equalTo(3.)));
+    }
+
+    @Test
+    public void queuedLinksAreConflatedWhenQueueIsFullTest() {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, 2);
+
+        feed.offer(0, 1.);
+        feed.offer(1, 2.);
+
+        assertThat(feed.offer(0, 3.), is(true));
+        assertThat(feed.getConflatedCount(), is(equalTo(1L)));
+        assertThat(feed.getDroppedCount(), is(equalTo(0L)));
+        assertThat(feed.drain(), is(equalTo(2)));
+        assertThat(links.get(0).getValue(), is(equalTo(3.)));
+    }
+
+    @Test
+    public void drainWithoutUpdateDoesNothingTest() {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, 16);
+
+        assertThat(feed.drain(), is(equalTo(0)));
+        assertThat(feed.getAppliedCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void syntheticProducersKeepLatestValuesTest() throws InterruptedException {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, links.size());
+
+        feedFromProducers(feed);
+
+        long total = (long) PRODUCERS * UPDATES_PER_PRODUCER;
+        assertThat(feed.getReceivedCount(), is(equalTo(total)));
+        assertThat(feed.getDroppedCount(), is(equalTo(0L)));
+        assertThat(feed.getAppliedCount(), is(greaterThan(0L)));
+        for (int key = 0; key < links.size(); key++) {
+            int offset = key % LINKS_PER_PRODUCER;
+            int lastUpdate = (UPDATES_PER_PRODUCER - 1 - offset) / LINKS_PER_PRODUCER * LINKS_PER_PRODUCER + offset;
+            assertThat(links.get(key).getValue(), is(equalTo((double) lastUpdate)));
+        }
+    }
+
+    @Test
+    public void sharedLinksUnderContentionAreNotLostTest() throws InterruptedException {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, 2);
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            new Thread(() -> {
+                for (int i = 0; i < UPDATES_PER_PRODUCER / 10; i++) {
+                    feed.offer(i % 4, i);
+                }
+                done.countDown();
+            }).start();
+        }
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            feed.drain();
+        }
+        feed.drain();
+
+        assertThat(feed.getPendingCount(), is(equalTo(0)));
+        assertThat(feed.getReceivedCount(), is(equalTo(
+                feed.getConflatedCount() + feed.getDroppedCount() + feed.getAppliedCount())));
+        // no link is left marked as waiting for a drain
+        for (int key = 0; key < 4; key++) {
+            assertThat(feed.offer(key, -1.), is(true));
+            assertThat(feed.drain(), is(equalTo(1)));
+            assertThat(links.get(key).getValue(), is(equalTo(-1.)));
+        }
+    }
+
+    @Category(SoakTest.class)
+    @Test(timeout = 60_000)
+    public void throughputIsAtLeastOneMillionPerSecondTest() throws InterruptedException {
+        SankeyLinkFeed feed = new SankeyLinkFeed(links, links.size());
+
+        long elapsed = feedFromProducers(feed);
+
+        long total = (long) PRODUCERS * UPDATES_PER_PRODUCER;
+        assertThat(elapsed, is(lessThan(TimeUnit.SECONDS.toNanos(total / 1_000_000))));
+    }
+
+    /**
+     * Offer {@link #UPDATES_PER_PRODUCER} updates from each producer
+     * thread, each one on its own links, while draining.
+     *
+     * @return the time taken, in nanoseconds
+     */
+    private long feedFromProducers(SankeyLinkFeed feed) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+
+        long start = System.nanoTime();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int firstKey = p * LINKS_PER_PRODUCER;
+            new Thread(() -> {
+                for (int i = 0; i < UPDATES_PER_PRODUCER; i++) {
+                    feed.offer(firstKey + i % LINKS_PER_PRODUCER, i);
+                }
+                done.countDown();
+            }).start();
+        }
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            feed.drain();
+        }
+        long elapsed = System.nanoTime() - start;
+        feed.drain();
+        return elapsed;
+    }
+}
@@ -0,0 +1,190 @@
+package javafx.scene.chart;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class SankeyLinkFilterTest {
+    private SankeyLinkFilter filter;
+
+    private SankeyNode node1;
+    private SankeyNode node2;
+    private SankeyNode node3;
+    private SankeyNode node4;
+    private List<SankeyNode> nodes;
+
+    private SankeyLink link1;
+    private SankeyLink link2;
+    private SankeyLink link3;
+    private SankeyLink link4;
+    private List<SankeyLink> links;
+
+    @Before
+    public void setUp() {
+        filter = new SankeyLinkFilter();
+
+        node1 = new SankeyNode("node1");
+        node2 = new SankeyNode("node2");
+        node3 = new SankeyNode("node3");
+        node4 = new SankeyNode("node4");
+        node2.setHorizontalPosition(1);
+        node3.setHorizontalPosition(1);
+        node4.setHorizontalPosition(2);
+        nodes = asList(node1, node2, node3, node4);
+
+        link1 = new SankeyLink(node1, node2, 2.);
+        link2 = new SankeyLink(node1, node3, 5.);
+        link3 = new SankeyLink(node3, node4, 1.);
+        link4 = new SankeyLink(node1, node4, 6.);
+        links = asList(link1, link2, link3, link4);
+    }
+
+    @Test
+    public void refreshComputesNodesValueTest() {
+        filter.refresh(nodes, links);
+
+        assertThat(node1.getValue(), is(13.0));
+        assertThat(node2.getValue(), is(2.0));
+        assertThat(node3.getValue(), is(5.0));
+        assertThat(node4.getValue(), is(7.0));
+        assertThat(filter.columnTotal(1), is(equalTo(7.0)));
+        assertThat(filter.maxColumnTotal(), is(equalTo(13.0)));
+    }
+
+    @Test
+    public void raisingThresholdHidesLinksBelowTest() {
+        filter.refresh(nodes, links);
+
+        filter.setThreshold(2.5);
+
+        assertThat(link1.isFiltered(), is(true));
+        assertThat(link3.isFiltered(), is(true));
+        assertThat(link2.isFiltered(), is(false));
+        assertThat(link4.isFiltered(), is(false));
+        assertThat(link1.isVisible(), is(true));
+        assertThat(node1.getValue(), is(11.0));
+        assertThat(node2.getValue(), is(0.0));
+        assertThat(node4.getValue(), is(6.0));
+        assertThat(filter.columnTotal(1), is(equalTo(5.0)));
+        assertThat(filter.columnTotal(2), is(equalTo(6.0)));
+    }
+
+    @Test
+    public void loweringThresholdShowsLinksAgainTest() {
+        filter.setThreshold(5.0);
+        filter.refresh(nodes, links);
+
+        filter.setThreshold(1.0);
+
+        assertThat(links.stream().noneMatch(SankeyLink::isFiltered), is(true));
+        assertThat(node1.getValue(), is(13.0));
+        assertThat(node4.getValue(), is(7.0));
+        assertThat(filter.columnTotal(1), is(equalTo(7.0)));
+    }
+
+    @Test
+    public void thresholdIsInclusiveTest() {
+        filter.refresh(nodes, links);
+
+        filter.setThreshold(5.0);
+
+        assertThat(link2.isFiltered(), is(false));
+        assertThat(link1.isFiltered(), is(true));
+    }
+
+    @Test
+    public void changedNodesAreReportedTest() {
+        filter.refresh(nodes, links);
+
+        filter.setThreshold(1.5);
+
+        assertThat(filter.getChangedNodes(), containsInAnyOrder(node3, node4));
+        filter.clearChangedNodes();
+        assertThat(filter.getChangedNodes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void valueChangeMovesLinkAcrossThresholdTest() {
+        filter.setThreshold(2.5);
+        filter.refresh(nodes, links);
+
+        link1.setValue(10.);
+        filter.valueHasChangedFor(link1);
+        link4.setValue(1.);
+        filter.valueHasChangedFor(link4);
+
+        assertThat(link1.isFiltered(), is(false));
+        assertThat(link4.isFiltered(), is(true));
+        assertThat(node1.getValue(), is(15.0));
+        assertThat(node2.getValue(), is(10.0));
+        assertThat(node4.getValue(), is(0.0));
+        assertThat(filter.columnTotal(1), is(equalTo(15.0)));
+        assertThat(filter.columnTotal(2), is(equalTo(0.0)));
+
+        filter.setThreshold(0.0);
+
+        assertThat(node1.getValue(), is(16.0));
+        assertThat(node4.getValue(), is(2.0));
+    }
+
+    @Test
+    public void updateColumnsMovesNodeValueTest() {
+        filter.refresh(nodes, links);
+
+        node4.setHorizontalPosition(3);
+        filter.updateColumns(nodes);
+
+        assertThat(filter.columnTotal(2), is(equalTo(0.0)));
+        assertThat(filter.columnTotal(3), is(equalTo(7.0)));
+    }
+
+    @Test
+    public void invalidateRebuildsWithNewValuesTest() {
+        filter.refresh(nodes, links);
+
+        link4.setValue(10.);
+        filter.invalidate();
+        filter.refresh(nodes, links);
+
+        assertThat(node1.getValue(), is(17.0));
+        assertThat(node4.getValue(), is(11.0));
+    }
+
+    @Test
+    public void filteringOutEveryLinkLeavesNoValueTest() {
+        link1.setValue(0.1);
+        link2.setValue(0.2);
+        link4.setValue(0.3);
+        filter.refresh(nodes, links);
+
+        filter.setThreshold(10.0);
+
+        assertThat(node1.getValue(), is(equalTo(0.0)));
+        assertThat(node3.getValue(), is(equalTo(0.0)));
+        assertThat(filter.columnTotal(0), is(equalTo(0.0)));
+        assertThat(filter.columnTotal(1), is(equalTo(0.0)));
+        assertThat(filter.maxColumnTotal(), is(equalTo(0.0)));
+    }
+
+    @Test
+    public void valueChangesDoNotLeaveRoundingErrorsTest() {
+        filter.refresh(nodes, links);
+
+        for (int i = 0; i < 1000; i++) {
+            link1.setValue(0.1 * i);
+            filter.valueHasChangedFor(link1);
+        }
+        link1.setValue(2.);
+        filter.valueHasChangedFor(link1);
+
+        assertThat(node1.getValue(), is(equalTo(13.0)));
+        assertThat(filter.columnTotal(1), is(equalTo(7.0)));
+    }
+}
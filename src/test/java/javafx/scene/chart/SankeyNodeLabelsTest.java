@@ -0,0 +1,135 @@
+package javafx.scene.chart;
+
+import javafx.collections.ObservableList;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Node;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.base.Strings.repeat;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SankeyNodeLabelsTest {
+    private static final double RIGHT = 1000;
+
+    private ObservableList<Node> children;
+    private SankeyNodeLabels labels;
+
+    private SankeyNode node1;
+    private SankeyNode node2;
+    private SankeyNode node3;
+
+    @Before
+    public void setUp() {
+        new JFXPanel();
+
+        labels = new SankeyNodeLabels();
+        children = labels.getGroup().getChildren();
+
+        node1 = node("node1", 0, 0, 13.0);
+        node2 = node("node2", 0, 2, 2.0);
+        node3 = node("node3", 0, 200, 5.0);
+    }
+
+    private static SankeyNode node(String name, double x, double y, double value) {
+        SankeyNode node = new SankeyNode(name);
+        node.setX(x);
+        node.setY(y);
+        node.setWidth(24);
+        node.setHeight(20);
+        node.setValue(value);
+        return node;
+    }
+
+    @Test
+    public void measureIsCachedTest() {
+        double[] size = labels.measure("node");
+
+        assertThat(labels.measure("node"), is(size));
+        assertThat(labels.numberOfCachedMetrics(), is(equalTo(1)));
+    }
+
+    @Test
+    public void overlappingLabelOfSmallerNodeIsHiddenTest() {
+        labels.update(asList(node1, node2, node3), RIGHT);
+
+        assertThat(children.size(), is(equalTo(3)));
+        assertThat(labels.textFor(node1).isVisible(), is(true));
+        assertThat(labels.textFor(node2).isVisible(), is(false));
+        assertThat(labels.textFor(node3).isVisible(), is(true));
+    }
+
+    @Test
+    public void valueChangeUpdatesHiddenLabelTest() {
+        labels.update(asList(node1, node2), RIGHT);
+
+        node2.setValue(20.0);
+        labels.update(asList(node1, node2), RIGHT);
+
+        assertThat(labels.textFor(node1).isVisible(), is(false));
+        assertThat(labels.textFor(node2).isVisible(), is(true));
+    }
+
+    @Test
+    public void repeatedValueChangesKeepPriorityOrderTest() {
+        labels.update(asList(node1, node2, node3), RIGHT);
+
+        node2.setValue(20.0);
+        labels.update(asList(node1, node2, node3), RIGHT);
+        node2.setValue(1.0);
+        node1.setValue(14.0);
+        labels.update(asList(node1, node2, node3), RIGHT);
+
+        assertThat(labels.textFor(node1).isVisible(), is(true));
+        assertThat(labels.textFor(node2).isVisible(), is(false));
+        assertThat(labels.textFor(node3).isVisible(), is(true));
+    }
+
+    @Test
+    public void longLabelHidesLabelsAlongItsWidthTest() {
+        node1.setName(repeat("long name ", 50));
+        node3.setX(600);
+        node3.setY(0);
+
+        labels.update(asList(node1, node3), RIGHT * 10);
+
+        assertThat(labels.textFor(node1).isVisible(), is(true));
+        assertThat(labels.textFor(node3).isVisible(), is(false));
+    }
+
+    @Test
+    public void labelIsPlacedOnTheLeftAtTheRightOfTheFrameTest() {
+        node3.setX(RIGHT - node3.getWidth());
+
+        labels.update(asList(node1, node3), RIGHT);
+
+        assertThat(labels.textFor(node1).getX(), is(equalTo(node1.getX() + node1.getWidth() + 6)));
+        assertThat(labels.textFor(node3).getX() < node3.getX(), is(true));
+    }
+
+    @Test
+    public void onlyChangedLabelsAreUpdatedTest() {
+        labels.update(asList(node1, node3), RIGHT);
+        labels.textFor(node1).setX(-1);
+
+        node3.setName("renamed");
+        labels.update(asList(node1, node3), RIGHT);
+
+        assertThat(labels.textFor(node1).getX(), is(equalTo(-1.0)));
+        assertThat(labels.textFor(node3).getText(), is(equalTo("renamed")));
+    }
+
+    @Test
+    public void removedLabelRevealsHiddenOneTest() {
+        labels.update(asList(node1, node2), RIGHT);
+
+        labels.remove(node1);
+        labels.update(asList(node2), RIGHT);
+
+        assertThat(children.size(), is(equalTo(1)));
+        assertThat(labels.textFor(node2).isVisible(), is(true));
+    }
+}
@@ -0,0 +1,92 @@
+package javafx.scene.chart;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class SankeyNodeOrderingTest {
+    // node0 -> node3 and node1 -> node2, drawn crossed in the initial order
+    private static final int[] COLUMNS = {0, 0, 1, 1};
+    private static final int[] SOURCES = {0, 1};
+    private static final int[] TARGETS = {3, 2};
+    private static final double[] VALUES = {1.0, 1.0};
+
+    private static final int LARGE_COLUMNS = 10;
+    private static final int LARGE_NODES_PER_COLUMN = 2_000;
+    private static final int LARGE_LINKS = 300_000;
+
+    @Test
+    public void countCrossingsTest() {
+        SankeyNodeOrdering ordering = new SankeyNodeOrdering(COLUMNS, SOURCES, TARGETS, VALUES,
+                new int[][]{{0, 1}, {2, 3}});
+
+        assertThat(ordering.countCrossings(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void orderRemovesCrossingsTest() {
+        SankeyNodeOrdering ordering = new SankeyNodeOrdering(COLUMNS, SOURCES, TARGETS, VALUES,
+                new int[][]{{0, 1}, {2, 3}});
+
+        int[][] layers = ordering.order(4, Long.MAX_VALUE);
+
+        assertThat(layers, is(equalTo(new int[][]{{0, 1}, {3, 2}})));
+    }
+
+    @Test
+    public void orderKeepsInitialOrderWithoutBudgetTest() {
+        SankeyNodeOrdering ordering = new SankeyNodeOrdering(COLUMNS, SOURCES, TARGETS, VALUES,
+                new int[][]{{0, 1}, {2, 3}});
+
+        int[][] layers = ordering.order(4, 0);
+
+        assertThat(layers, is(equalTo(new int[][]{{0, 1}, {2, 3}})));
+    }
+
+    @Test
+    public void orderRespectsBudgetOnLargeGraphTest() {
+        long budget = TimeUnit.MILLISECONDS.toNanos(10);
+
+        long withoutBudget = timeToOrder(largeOrdering(), 0);
+        long withBudget = timeToOrder(largeOrdering(), budget);
+
+        // the unbounded ordering of this graph takes hundreds of milliseconds
+        assertThat(withoutBudget, is(lessThan(TimeUnit.MILLISECONDS.toNanos(50))));
+        assertThat(withBudget, is(lessThan(budget + TimeUnit.MILLISECONDS.toNanos(100))));
+    }
+
+    private static long timeToOrder(SankeyNodeOrdering ordering, long budget) {
+        long start = System.nanoTime();
+        ordering.order(8, budget);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the ordering of random links between consecutive columns
+     */
+    private static SankeyNodeOrdering largeOrdering() {
+        Random random = new Random(42);
+        int[] columns = new int[LARGE_COLUMNS * LARGE_NODES_PER_COLUMN];
+        int[][] layers = new int[LARGE_COLUMNS][LARGE_NODES_PER_COLUMN];
+        for (int node = 0; node < columns.length; node++) {
+            columns[node] = node / LARGE_NODES_PER_COLUMN;
+            layers[columns[node]][node % LARGE_NODES_PER_COLUMN] = node;
+        }
+        int[] sources = new int[LARGE_LINKS];
+        int[] targets = new int[LARGE_LINKS];
+        double[] values = new double[LARGE_LINKS];
+        for (int link = 0; link < LARGE_LINKS; link++) {
+            int column = random.nextInt(LARGE_COLUMNS - 1);
+            sources[link] = column * LARGE_NODES_PER_COLUMN + random.nextInt(LARGE_NODES_PER_COLUMN);
+            targets[link] = (column + 1) * LARGE_NODES_PER_COLUMN + random.nextInt(LARGE_NODES_PER_COLUMN);
+            values[link] = 1 + random.nextInt(100);
+        }
+        return new SankeyNodeOrdering(columns, sources, targets, values, layers);
+    }
+}
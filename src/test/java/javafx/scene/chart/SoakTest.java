@@ -0,0 +1,8 @@
+package javafx.scene.chart;
+
+/**
+ * Category of the long running tests, excluded from the default test
+ * run. They are run with {@code mvn test -Psoak}.
+ */
+public interface SoakTest {
+}